@@ -0,0 +1,220 @@
+package org.ithub.mediastorageservice.service;
+
+import org.ithub.mediastorageservice.config.VariantProfile;
+import org.ithub.mediastorageservice.config.VariantProfileProperties;
+import org.ithub.mediastorageservice.enums.MediaStatus;
+import org.ithub.mediastorageservice.enums.MediaType;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Общие данные и заглушки для бенчмарков
+ */
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Реализация интерфейса репозитория: методы из handlers вызывают переданную функцию,
+     * остальные возвращают ноль, пустой список или null
+     */
+    static <T> T repository(Class<T> type, Map<String, Function<Object[], Object>> handlers) {
+        return repository(type, handlers, new LongAdder());
+    }
+
+    /**
+     * То же, с подсчетом вызовов методов репозитория - каждый соответствует запросу к БД
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T repository(Class<T> type, Map<String, Function<Object[], Object>> handlers, LongAdder calls) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "toString":
+                    return type.getSimpleName() + "Fake";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    calls.increment();
+            }
+            Function<Object[], Object> handler = handlers.get(method.getName());
+            return handler != null ? handler.apply(args) : defaultValue(method.getReturnType());
+        });
+    }
+
+    private static Object defaultValue(Class<?> returnType) {
+        if (returnType == int.class) {
+            return 0;
+        }
+        if (returnType == long.class) {
+            return 0L;
+        }
+        if (returnType == boolean.class) {
+            return false;
+        }
+        return List.class.isAssignableFrom(returnType) ? List.of() : null;
+    }
+
+    /**
+     * TransactionTemplate без базы данных: колбэк выполняется сразу, фиксировать нечего
+     */
+    static TransactionTemplate transactionTemplate() {
+        return new TransactionTemplate(new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+            }
+        });
+    }
+
+    /**
+     * Изображение, похожее на фотографию: плавные градиенты с шумом,
+     * чтобы JPEG сжимался как реальный снимок, а не как заливка
+     */
+    static BufferedImage photo(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = clamp(255 * x / width + random.nextInt(24) - 12);
+                int g = clamp(255 * y / height + random.nextInt(24) - 12);
+                int b = clamp(128 + (int) (64 * Math.sin(x / 37.0) * Math.cos(y / 53.0)) + random.nextInt(24) - 12);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Частотная мишень (zone plate): концентрические кольца с растущей частотой.
+     * При уменьшении без фильтрации на ней видны муаровые кольца
+     */
+    static BufferedImage zonePlate(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        double scale = Math.PI / Math.max(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double dx = x - width / 2.0;
+                double dy = y - height / 2.0;
+                int value = clamp((int) Math.round(127.5 + 127.5 * Math.cos(scale * (dx * dx + dy * dy))));
+                image.setRGB(x, y, (value << 16) | (value << 8) | value);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Прежняя реализация resizeImage: размер с сохранением пропорций (ноль - по другой стороне),
+     * затем один вызов drawImage с бикубической интерполяцией. Оставлена как базовая линия для сравнения скорости
+     */
+    static BufferedImage graphics2dResize(BufferedImage sourceImage, int targetWidth, int targetHeight) {
+        Dimension size = ImageProcessingService.calculateTargetSize(sourceImage.getWidth(), sourceImage.getHeight(),
+                targetWidth, targetHeight);
+        return graphics2dScale(sourceImage, size.width, size.height);
+    }
+
+    /**
+     * Масштабирование одним drawImage до точного размера, для сравнения качества с тем же размером
+     */
+    static BufferedImage graphics2dScale(BufferedImage sourceImage, int targetWidth, int targetHeight) {
+        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resizedImage.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.drawImage(sourceImage, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return resizedImage;
+    }
+
+    static byte[] jpeg(BufferedImage image) {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            ImageIO.write(image, "JPEG", outputStream);
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode fixture image", e);
+        }
+    }
+
+    static MediaFile mediaFile(long id, String storageKey, int width, int height) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(id);
+        mediaFile.setOriginalFilename("IMG_" + id + ".jpg");
+        mediaFile.setSize(2_500_000L);
+        mediaFile.setStorageKey(storageKey);
+        mediaFile.setMediaType(MediaType.IMAGE);
+        mediaFile.setMimeType("image/jpeg");
+        mediaFile.setStatus(MediaStatus.PROCESSING);
+        mediaFile.setUploadedBy("currentUser");
+        mediaFile.setWidth(width);
+        mediaFile.setHeight(height);
+        mediaFile.setCreatedAt(LocalDateTime.of(2025, 1, 1, 12, 0));
+        return mediaFile;
+    }
+
+    /**
+     * Профили вариантов как в application.properties
+     */
+    static VariantProfileProperties variantProfiles() {
+        VariantProfileProperties properties = new VariantProfileProperties();
+        properties.getProfiles().put("thumbnail", variantProfile(150, 150, 0.75f));
+        properties.getProfiles().put("medium", variantProfile(600, 600, 0.8f));
+        properties.getProfiles().put("instagram", variantProfile(1080, 1080, 0.85f));
+        properties.getProfiles().put("telegram", variantProfile(1280, 0, 0.85f));
+        properties.validate();
+        return properties;
+    }
+
+    private static VariantProfile variantProfile(int width, int height, float quality) {
+        VariantProfile profile = new VariantProfile();
+        profile.setWidth(width);
+        profile.setHeight(height);
+        profile.setQuality(quality);
+        return profile;
+    }
+
+    /**
+     * Размер в виде "ШИРИНАxВЫСОТА"
+     */
+    static int[] size(String value) {
+        String[] parts = value.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,69 @@
+package org.ithub.mediastorageservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ithub.mediastorageservice.image.ImageResampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImageProcessingService.resizeImage для разных исходных и целевых размеров и фильтров,
+ * GRAPHICS2D - прежнее масштабирование одним drawImage для сравнения.
+ * Целевой размер с нулем означает сохранение пропорций по другой стороне.
+ * Качество (PSNR) сравнивает ResampleQualityReport
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ImageResizeBenchmark {
+
+    @Param({"1024x768", "4000x3000"})
+    private String source;
+
+    @Param({"150x150", "600x600", "1280x0"})
+    private String target;
+
+    @Param({"LANCZOS3", "MITCHELL", "GRAPHICS2D"})
+    private String scaler;
+
+    private ImageResampler imageResampler;
+    private ImageProcessingService imageProcessingService;
+    private BufferedImage sourceImage;
+    private int targetWidth;
+    private int targetHeight;
+
+    @Setup
+    public void setUp() {
+        imageResampler = new ImageResampler(
+                ImageResampler.Filter.valueOf("GRAPHICS2D".equals(scaler) ? "LANCZOS3" : scaler), 0);
+        imageProcessingService = new ImageProcessingService(new InMemoryMediaStorageService(), null, null, imageResampler, null,
+                new SimpleMeterRegistry());
+        int[] sourceSize = BenchmarkFixtures.size(source);
+        sourceImage = BenchmarkFixtures.photo(sourceSize[0], sourceSize[1]);
+        int[] targetSize = BenchmarkFixtures.size(target);
+        targetWidth = targetSize[0];
+        targetHeight = targetSize[1];
+    }
+
+    @TearDown
+    public void tearDown() {
+        imageResampler.shutdown();
+    }
+
+    @Benchmark
+    public BufferedImage resize() {
+        if ("GRAPHICS2D".equals(scaler)) {
+            return BenchmarkFixtures.graphics2dResize(sourceImage, targetWidth, targetHeight);
+        }
+        return imageProcessingService.resizeImage(sourceImage, targetWidth, targetHeight);
+    }
+}
@@ -0,0 +1,36 @@
+package org.ithub.mediastorageservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Хранилище в памяти вместо MinIO: бенчмарки измеряют обработку, а не сеть
+ */
+class InMemoryMediaStorageService extends MediaStorageService {
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    InMemoryMediaStorageService() {
+        super(null, null, new SimpleMeterRegistry());
+    }
+
+    @Override
+    public byte[] getFile(String filename) {
+        byte[] data = objects.get(filename);
+        if (data == null) {
+            throw new RuntimeException("Object not found: " + filename);
+        }
+        return data;
+    }
+
+    @Override
+    public void uploadBytes(byte[] data, String filename, String contentType) {
+        objects.put(filename, data);
+    }
+
+    @Override
+    public String getPresignedUrl(String filename, int expiryMinutes) {
+        return "http://localhost:9000/media-storage/" + filename + "?X-Amz-Expires=" + expiryMinutes * 60;
+    }
+}
@@ -0,0 +1,61 @@
+package org.ithub.mediastorageservice.service;
+
+import org.ithub.mediastorageservice.image.JpegEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование варианта в JPEG: прежний ImageIO.write с настройками по умолчанию
+ * и JpegEncoder из ImageProcessingService.storeVariant с разным качеством и режимами.
+ * Размер результата для каждого набора параметров печатается при подготовке
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JpegEncodeBenchmark {
+
+    @Param({"150x113", "600x450", "1280x960"})
+    private String size;
+
+    @Param({"0.75", "0.85"})
+    private float quality;
+
+    @Param({"false", "true"})
+    private boolean progressive;
+
+    private BufferedImage image;
+    private JpegEncoder jpegEncoder;
+
+    @Setup
+    public void setUp() throws IOException {
+        int[] dimensions = BenchmarkFixtures.size(size);
+        image = BenchmarkFixtures.photo(dimensions[0], dimensions[1]);
+        jpegEncoder = new JpegEncoder(quality, progressive, true);
+        System.out.printf("%nsize=%s: imageIoWrite %d bytes, jpegEncoder(quality=%s, progressive=%s) %d bytes%n",
+                size, imageIoWrite().length, quality, progressive, jpegEncoder.encode(image).length);
+    }
+
+    @Benchmark
+    public byte[] imageIoWrite() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "JPEG", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] jpegEncoder() {
+        return jpegEncoder.encode(image);
+    }
+}
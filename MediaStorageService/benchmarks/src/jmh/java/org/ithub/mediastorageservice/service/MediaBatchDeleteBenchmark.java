@@ -0,0 +1,155 @@
+package org.ithub.mediastorageservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ithub.mediastorageservice.dto.MediaBatchOperationRequestDTO;
+import org.ithub.mediastorageservice.dto.MediaBatchOperationResultDTO;
+import org.ithub.mediastorageservice.model.MediaAlbum;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.model.MediaVariant;
+import org.ithub.mediastorageservice.repository.MediaAlbumRepository;
+import org.ithub.mediastorageservice.repository.MediaBlobRepository;
+import org.ithub.mediastorageservice.repository.MediaFileRepository;
+import org.ithub.mediastorageservice.repository.MediaTagRepository;
+import org.ithub.mediastorageservice.repository.MediaVariantRepository;
+import org.ithub.mediastorageservice.search.MediaSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.StreamSupport;
+
+/**
+ * Удаление N файлов: пакетная операция MediaBatchOperationService против цикла deleteMediaFile по одному id.
+ * Репозитории и хранилище - заглушки в памяти, поэтому время показывает накладные расходы сервисов,
+ * а число обращений к БД и MinIO на N id печатается при подготовке (строка "calls per run")
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MediaBatchDeleteBenchmark {
+    private static final List<String> VARIANT_NAMES = List.of("thumbnail", "medium", "instagram");
+
+    @Param({"10", "100", "1000"})
+    private int files;
+
+    private final LongAdder repositoryCalls = new LongAdder();
+    private final LongAdder storageCalls = new LongAdder();
+
+    private MediaBatchOperationService mediaBatchOperationService;
+    private MediaFileService mediaFileService;
+    private List<Long> mediaIds;
+
+    @Setup
+    public void setUp() {
+        List<MediaFile> mediaFiles = new ArrayList<>();
+        Map<Long, List<MediaVariant>> variantsByFile = new HashMap<>();
+        for (long id = 1; id <= files; id++) {
+            MediaFile mediaFile = BenchmarkFixtures.mediaFile(id, "2025/01/01/file-" + id + ".jpg", 4000, 3000);
+            mediaFiles.add(mediaFile);
+            List<MediaVariant> variants = new ArrayList<>();
+            for (String name : VARIANT_NAMES) {
+                MediaVariant variant = new MediaVariant();
+                variant.setMediaFile(mediaFile);
+                variant.setVariantName(name);
+                variant.setStorageKey("2025/01/01/variants/" + name + "/file-" + id + ".jpg");
+                variants.add(variant);
+            }
+            variantsByFile.put(id, variants);
+        }
+        mediaIds = mediaFiles.stream().map(MediaFile::getId).toList();
+
+        // Все файлы лежат в одном альбоме, на каждый объект одна ссылка
+        MediaAlbum album = new MediaAlbum();
+        album.setId(1L);
+        album.setName("Benchmark");
+
+        MediaFileRepository fileRepository = BenchmarkFixtures.repository(MediaFileRepository.class, Map.of(
+                "findById", args -> Optional.of(mediaFiles.get((int) ((Long) args[0] - 1))),
+                "findAllById", args -> ids(args[0]).stream().map(id -> mediaFiles.get((int) (id - 1))).toList(),
+                "findAllByIdForUpdate", args -> ids(args[0]).stream().map(id -> mediaFiles.get((int) (id - 1))).toList()),
+                repositoryCalls);
+        MediaVariantRepository variantRepository = BenchmarkFixtures.repository(MediaVariantRepository.class, Map.of(
+                "findByMediaFileId", args -> variantsByFile.get((Long) args[0]),
+                "findByMediaFileIdIn", args -> ids(args[0]).stream().flatMap(id -> variantsByFile.get(id).stream()).toList()),
+                repositoryCalls);
+        MediaTagRepository tagRepository = BenchmarkFixtures.repository(MediaTagRepository.class, Map.of(), repositoryCalls);
+        MediaAlbumRepository albumRepository = BenchmarkFixtures.repository(MediaAlbumRepository.class, Map.of(
+                "findAlbumIdsByMediaId", args -> List.of(1L),
+                "findAlbumIdsByMediaIds", args -> List.of(1L),
+                "findAllByIdForUpdate", args -> List.of(album),
+                "save", args -> args[0]),
+                repositoryCalls);
+        MediaBlobRepository blobRepository = BenchmarkFixtures.repository(MediaBlobRepository.class, Map.of(
+                "findExistingKeys", args -> List.copyOf((Collection<?>) args[0]),
+                "findUnreferencedKeys", args -> List.copyOf((Collection<?>) args[0])),
+                repositoryCalls);
+
+        InMemoryMediaStorageService storage = new InMemoryMediaStorageService() {
+            @Override
+            public Map<String, String> deleteFiles(Collection<String> filenames) {
+                storageCalls.increment();
+                return Map.of();
+            }
+        };
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MediaSearchIndex searchIndex = new MediaSearchIndex();
+        MediaVariantMemoryCacheService memoryCache = new MediaVariantMemoryCacheService(storage, meterRegistry);
+        MediaBlobService mediaBlobService = new MediaBlobService(blobRepository, storage,
+                new MediaDiskCacheService(storage, meterRegistry), memoryCache);
+        MediaAlbumService mediaAlbumService = new MediaAlbumService(albumRepository, null, fileRepository);
+        MediaVariantService mediaVariantService = new MediaVariantService(variantRepository, storage, null, fileRepository,
+                memoryCache, searchIndex, meterRegistry, null, mediaBlobService, BenchmarkFixtures.transactionTemplate());
+
+        mediaFileService = new MediaFileService(fileRepository, storage, new MediaTagService(tagRepository, searchIndex),
+                mediaVariantService, mediaAlbumService, null, null, mediaBlobService, BenchmarkFixtures.transactionTemplate(),
+                searchIndex, meterRegistry);
+        mediaBatchOperationService = new MediaBatchOperationService(fileRepository, variantRepository, tagRepository,
+                albumRepository, mediaAlbumService, mediaBlobService, BenchmarkFixtures.transactionTemplate(), searchIndex);
+
+        printCalls("batch", this::batchDelete);
+        printCalls("loop", this::loopDelete);
+    }
+
+    @Benchmark
+    public MediaBatchOperationResultDTO batchDelete() {
+        MediaBatchOperationRequestDTO request = new MediaBatchOperationRequestDTO();
+        request.setOperation("delete");
+        request.setMediaIds(mediaIds);
+        return mediaBatchOperationService.execute(request);
+    }
+
+    @Benchmark
+    public int loopDelete() {
+        for (Long id : mediaIds) {
+            mediaFileService.deleteMediaFile(id);
+        }
+        return mediaIds.size();
+    }
+
+    private void printCalls(String path, Runnable run) {
+        repositoryCalls.reset();
+        storageCalls.reset();
+        run.run();
+        System.out.printf("%n%s, %d files: calls per run - repository %d, storage %d%n",
+                path, files, repositoryCalls.sum(), storageCalls.sum());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> ids(Object iterable) {
+        return StreamSupport.stream(((Iterable<Long>) iterable).spliterator(), false).toList();
+    }
+}
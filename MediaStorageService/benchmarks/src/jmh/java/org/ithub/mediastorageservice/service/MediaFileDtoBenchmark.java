@@ -0,0 +1,83 @@
+package org.ithub.mediastorageservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.model.MediaTag;
+import org.ithub.mediastorageservice.model.MediaVariant;
+import org.ithub.mediastorageservice.repository.MediaTagRepository;
+import org.ithub.mediastorageservice.repository.MediaVariantRepository;
+import org.ithub.mediastorageservice.search.MediaSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MediaFileService.convertToDTO и convertToDTOs: теги и варианты из репозиториев в памяти,
+ * ссылки - из хранилища в памяти
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MediaFileDtoBenchmark {
+    private static final List<String> VARIANT_NAMES = List.of("thumbnail", "medium", "instagram", "telegram");
+
+    @Param({"1", "50"})
+    private int files;
+
+    private MediaFileService mediaFileService;
+    private List<MediaFile> mediaFiles;
+
+    @Setup
+    public void setUp() {
+        mediaFiles = new ArrayList<>();
+        List<MediaTag> tags = new ArrayList<>();
+        List<MediaVariant> variants = new ArrayList<>();
+        for (long id = 1; id <= files; id++) {
+            MediaFile mediaFile = BenchmarkFixtures.mediaFile(id, "2025/01/01/file-" + id + ".jpg", 4000, 3000);
+            mediaFiles.add(mediaFile);
+            for (String name : List.of("travel", "family", "summer")) {
+                MediaTag tag = new MediaTag();
+                tag.setMediaFile(mediaFile);
+                tag.setName(name);
+                tags.add(tag);
+            }
+            for (String name : VARIANT_NAMES) {
+                MediaVariant variant = new MediaVariant();
+                variant.setMediaFile(mediaFile);
+                variant.setVariantName(name);
+                variant.setStorageKey("2025/01/01/variants/" + name + "/file-" + id + ".jpg");
+                variants.add(variant);
+            }
+        }
+
+        InMemoryMediaStorageService storage = new InMemoryMediaStorageService();
+        MediaTagRepository tagRepository = BenchmarkFixtures.repository(MediaTagRepository.class,
+                Map.of("findByMediaFileIdIn", args -> tags));
+        MediaVariantRepository variantRepository = BenchmarkFixtures.repository(MediaVariantRepository.class,
+                Map.of("findByMediaFileIdIn", args -> variants));
+        MediaSearchIndex searchIndex = new MediaSearchIndex();
+
+        MediaTagService mediaTagService = new MediaTagService(tagRepository, searchIndex);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MediaVariantService mediaVariantService = new MediaVariantService(variantRepository, storage, null, null, null,
+                searchIndex, meterRegistry, null, null, null);
+        mediaFileService = new MediaFileService(null, storage, mediaTagService, mediaVariantService,
+                null, null, null, null, null, searchIndex, meterRegistry);
+        mediaFileService.initMetrics();
+    }
+
+    @Benchmark
+    public Object convert() {
+        return files == 1 ? mediaFileService.convertToDTO(mediaFiles.get(0)) : mediaFileService.convertToDTOs(mediaFiles);
+    }
+}
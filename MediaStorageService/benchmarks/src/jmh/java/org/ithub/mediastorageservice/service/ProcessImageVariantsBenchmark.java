@@ -0,0 +1,89 @@
+package org.ithub.mediastorageservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ithub.mediastorageservice.config.VariantProfile;
+import org.ithub.mediastorageservice.config.VariantProfileProperties;
+import org.ithub.mediastorageservice.image.ImageResampler;
+import org.ithub.mediastorageservice.image.JpegEncoder;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.repository.MediaBlobRepository;
+import org.ithub.mediastorageservice.repository.MediaFileRepository;
+import org.ithub.mediastorageservice.repository.MediaVariantRepository;
+import org.ithub.mediastorageservice.search.MediaSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полная обработка вариантов одного изображения: чтение оригинала из хранилища, декодирование,
+ * масштабирование всех профилей, кодирование в JPEG и сохранение вариантов.
+ * decodePerProfile - прежний порядок для сравнения: оригинал декодируется заново для каждого профиля
+ * и каждый вариант масштабируется из полного изображения
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProcessImageVariantsBenchmark {
+    private static final String STORAGE_KEY = "2025/01/01/original.jpg";
+
+    @Param({"1024x768", "4000x3000"})
+    private String source;
+
+    private InMemoryMediaStorageService storage;
+    private ImageProcessingService imageProcessingService;
+    private MediaVariantService mediaVariantService;
+    private List<VariantProfile> profiles;
+    private MediaFile mediaFile;
+
+    @Setup
+    public void setUp() {
+        int[] size = BenchmarkFixtures.size(source);
+        storage = new InMemoryMediaStorageService();
+        storage.uploadBytes(BenchmarkFixtures.jpeg(BenchmarkFixtures.photo(size[0], size[1])), STORAGE_KEY, "image/jpeg");
+
+        // Репозитории возвращают сохраняемую сущность, как save в JPA
+        MediaVariantRepository variantRepository = BenchmarkFixtures.repository(MediaVariantRepository.class,
+                Map.of("save", args -> args[0]));
+        MediaFileRepository fileRepository = BenchmarkFixtures.repository(MediaFileRepository.class,
+                Map.of("save", args -> args[0]));
+        MediaBlobRepository blobRepository = BenchmarkFixtures.repository(MediaBlobRepository.class, Map.of());
+
+        MediaBlobService mediaBlobService = new MediaBlobService(blobRepository, storage, null, null);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        imageProcessingService = new ImageProcessingService(storage, variantRepository, mediaBlobService,
+                new ImageResampler(ImageResampler.Filter.LANCZOS3, 0), new JpegEncoder(0.8f, false, true), meterRegistry);
+        VariantProfileProperties variantProfiles = BenchmarkFixtures.variantProfiles();
+        mediaVariantService = new MediaVariantService(variantRepository, storage, imageProcessingService,
+                fileRepository, new MediaVariantMemoryCacheService(storage, meterRegistry), new MediaSearchIndex(), meterRegistry,
+                variantProfiles, mediaBlobService, BenchmarkFixtures.transactionTemplate());
+        mediaFile = BenchmarkFixtures.mediaFile(1, STORAGE_KEY, size[0], size[1]);
+        profiles = variantProfiles.profilesFor(mediaFile.getMediaType());
+    }
+
+    @Benchmark
+    public MediaFile processImageVariants() {
+        mediaVariantService.processImageVariants(mediaFile);
+        return mediaFile;
+    }
+
+    @Benchmark
+    public int decodePerProfile() {
+        byte[] imageData = storage.getFile(STORAGE_KEY);
+        int created = 0;
+        for (VariantProfile profile : profiles) {
+            BufferedImage originalImage = imageProcessingService.decodeImage(imageData);
+            created += imageProcessingService.createVariants(mediaFile, originalImage, List.of(profile)).size();
+        }
+        return created;
+    }
+}
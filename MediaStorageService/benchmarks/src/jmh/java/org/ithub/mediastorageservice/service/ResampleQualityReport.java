@@ -0,0 +1,80 @@
+package org.ithub.mediastorageservice.service;
+
+import org.ithub.mediastorageservice.image.ImageResampler;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Сравнение качества масштабирования по PSNR относительно эталона - усреднения по площади
+ * (Image.SCALE_AREA_AVERAGING): оно медленное, но не дает алиасинга при сильном уменьшении.
+ * Запуск: ./gradlew :benchmarks:resampleQuality
+ */
+public final class ResampleQualityReport {
+
+    private static final String[] TARGETS = {"150x150", "600x450", "1280x960"};
+
+    private ResampleQualityReport() {
+    }
+
+    public static void main(String[] args) {
+        Map<String, BufferedImage> sources = new LinkedHashMap<>();
+        sources.put("photo 4000x3000", BenchmarkFixtures.photo(4000, 3000));
+        sources.put("zone plate 2048x1536", BenchmarkFixtures.zonePlate(2048, 1536));
+
+        ImageResampler lanczos = new ImageResampler(ImageResampler.Filter.LANCZOS3, 0);
+        ImageResampler mitchell = new ImageResampler(ImageResampler.Filter.MITCHELL, 0);
+        try {
+            System.out.printf("%-22s %-10s %10s %10s %10s%n", "source", "target", "GRAPHICS2D", "LANCZOS3", "MITCHELL");
+            for (Map.Entry<String, BufferedImage> source : sources.entrySet()) {
+                for (String target : TARGETS) {
+                    int[] size = BenchmarkFixtures.size(target);
+                    BufferedImage image = source.getValue();
+                    BufferedImage reference = areaAverage(image, size[0], size[1]);
+                    System.out.printf("%-22s %-10s %10.2f %10.2f %10.2f%n", source.getKey(), target,
+                            psnr(reference, BenchmarkFixtures.graphics2dScale(image, size[0], size[1])),
+                            psnr(reference, lanczos.resize(image, size[0], size[1])),
+                            psnr(reference, mitchell.resize(image, size[0], size[1])));
+                }
+            }
+        } finally {
+            lanczos.shutdown();
+            mitchell.shutdown();
+        }
+    }
+
+    private static BufferedImage areaAverage(BufferedImage source, int width, int height) {
+        Image scaled = source.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING);
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.drawImage(scaled, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * Пиковое отношение сигнал/шум по трем каналам, дБ; больше - ближе к эталону
+     */
+    private static double psnr(BufferedImage reference, BufferedImage image) {
+        int width = reference.getWidth();
+        int height = reference.getHeight();
+        int[] expected = reference.getRGB(0, 0, width, height, null, 0, width);
+        int[] actual = image.getRGB(0, 0, width, height, null, 0, width);
+
+        double sum = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int diff = ((expected[i] >> shift) & 0xFF) - ((actual[i] >> shift) & 0xFF);
+                sum += diff * diff;
+            }
+        }
+        double mse = sum / (expected.length * 3.0);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+}
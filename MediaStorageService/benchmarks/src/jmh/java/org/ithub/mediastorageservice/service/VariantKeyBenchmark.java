@@ -0,0 +1,40 @@
+package org.ithub.mediastorageservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ithub.mediastorageservice.image.ImageResampler;
+import org.ithub.mediastorageservice.image.JpegEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImageProcessingService.generateVariantKey для ключа с путем и без него
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VariantKeyBenchmark {
+
+    @Param({"2025/01/01/3f2b9c4e-8a1d-4c55-9e0f-1b2c3d4e5f60.jpg", "3f2b9c4e-8a1d-4c55-9e0f-1b2c3d4e5f60.jpg"})
+    private String originalKey;
+
+    private ImageProcessingService imageProcessingService;
+
+    @Setup
+    public void setUp() {
+        imageProcessingService = new ImageProcessingService(new InMemoryMediaStorageService(), null, null,
+                new ImageResampler(ImageResampler.Filter.LANCZOS3, 0), new JpegEncoder(0.8f, false, true), new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public String generateVariantKey() {
+        return imageProcessingService.generateVariantKey(originalKey, "thumbnail");
+    }
+}
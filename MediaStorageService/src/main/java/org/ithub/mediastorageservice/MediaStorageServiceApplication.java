@@ -2,8 +2,10 @@ package org.ithub.mediastorageservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class MediaStorageServiceApplication {
 
     public static void main(String[] args) {
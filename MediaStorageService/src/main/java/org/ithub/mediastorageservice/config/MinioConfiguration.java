@@ -1,5 +1,6 @@
 package org.ithub.mediastorageservice.config;
 
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -27,4 +28,12 @@ public class MinioConfiguration {
                 .credentials(accessKey, secretKey)
                 .build();
     }
-}
\ No newline at end of file
+
+    @Bean
+    public MultipartMinioClient multipartMinioClient() {
+        return new MultipartMinioClient(MinioAsyncClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .build());
+    }
+}
@@ -0,0 +1,122 @@
+package org.ithub.mediastorageservice.config;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioAsyncClient;
+import io.minio.http.Method;
+import io.minio.messages.Part;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Клиент MinIO с доступом к низкоуровневому API multipart-загрузок
+ * (в MinioClient эти методы не публичные)
+ */
+public class MultipartMinioClient extends MinioAsyncClient {
+    // Подпись ссылки на загрузку части нужна только на время одного запроса
+    private static final int PART_URL_EXPIRY_MINUTES = 60;
+
+    private final OkHttpClient partHttpClient = new OkHttpClient.Builder()
+            .readTimeout(5, TimeUnit.MINUTES)
+            .build();
+
+    public MultipartMinioClient(MinioAsyncClient client) {
+        super(client);
+    }
+
+    public String createMultipartUpload(String bucketName, String objectName, String contentType) throws Exception {
+        Multimap<String, String> headers = HashMultimap.create();
+        if (contentType != null) {
+            headers.put("Content-Type", contentType);
+        }
+        return createMultipartUploadAsync(bucketName, null, objectName, headers, null)
+                .get()
+                .result()
+                .uploadId();
+    }
+
+    /**
+     * Загрузка части потоком с известной длиной. uploadPartAsync читает InputStream в память целиком,
+     * поэтому часть отправляется PUT-запросом по подписанной ссылке, тело передается без буферизации
+     */
+    public String uploadPart(String bucketName, String objectName, String uploadId,
+                             int partNumber, InputStream data, long length) throws Exception {
+        String url = getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+                .method(Method.PUT)
+                .bucket(bucketName)
+                .object(objectName)
+                .extraQueryParams(Map.of("uploadId", uploadId, "partNumber", String.valueOf(partNumber)))
+                .expiry(PART_URL_EXPIRY_MINUTES, TimeUnit.MINUTES)
+                .build());
+
+        Request request = new Request.Builder()
+                .url(url)
+                .put(new StreamingBody(data, length))
+                .build();
+        try (Response response = partHttpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Upload of part " + partNumber + " failed with HTTP " + response.code()
+                        + ": " + (response.body() != null ? response.body().string() : ""));
+            }
+            String etag = response.header("ETag");
+            if (etag == null) {
+                throw new IOException("MinIO returned no ETag for part " + partNumber);
+            }
+            return etag.replace("\"", "");
+        }
+    }
+
+    public void completeMultipartUpload(String bucketName, String objectName, String uploadId, Part[] parts) throws Exception {
+        completeMultipartUploadAsync(bucketName, null, objectName, uploadId, parts, null, null).get();
+    }
+
+    public void abortMultipartUpload(String bucketName, String objectName, String uploadId) throws Exception {
+        abortMultipartUploadAsync(bucketName, null, objectName, uploadId, null, null).get();
+    }
+
+    /**
+     * Тело запроса из потока клиента: ровно length байт, Content-Length известен заранее.
+     * Поток нельзя прочитать повторно, поэтому запрос не повторяется автоматически
+     */
+    private static final class StreamingBody extends RequestBody {
+        private final InputStream data;
+        private final long length;
+
+        private StreamingBody(InputStream data, long length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return null;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // Если поток закончится раньше, write бросит EOFException и часть не будет принята
+            sink.write(Okio.source(data), length);
+        }
+    }
+}
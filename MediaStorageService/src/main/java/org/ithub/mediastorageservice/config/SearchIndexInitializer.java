@@ -0,0 +1,22 @@
+package org.ithub.mediastorageservice.config;
+
+import org.ithub.mediastorageservice.search.MediaSearchService;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+@Component
+public class SearchIndexInitializer implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final MediaSearchService mediaSearchService;
+
+    public SearchIndexInitializer(MediaSearchService mediaSearchService) {
+        this.mediaSearchService = mediaSearchService;
+    }
+
+    @Override
+    public void onApplicationEvent(@NotNull ApplicationReadyEvent event) {
+        mediaSearchService.rebuildIndex();
+    }
+}
@@ -0,0 +1,22 @@
+package org.ithub.mediastorageservice.config;
+
+import org.ithub.mediastorageservice.service.VariantProcessingPipeline;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+@Component
+public class VariantProcessingInitializer implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final VariantProcessingPipeline variantProcessingPipeline;
+
+    public VariantProcessingInitializer(VariantProcessingPipeline variantProcessingPipeline) {
+        this.variantProcessingPipeline = variantProcessingPipeline;
+    }
+
+    @Override
+    public void onApplicationEvent(@NotNull ApplicationReadyEvent event) {
+        variantProcessingPipeline.resubmitPending();
+    }
+}
@@ -0,0 +1,40 @@
+package org.ithub.mediastorageservice.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.ithub.mediastorageservice.enums.FitMode;
+import org.ithub.mediastorageservice.enums.MediaType;
+import org.ithub.mediastorageservice.enums.VariantFormat;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Описание варианта изображения (имя и целевой размер).
+ * Если ширина или высота равна 0, она вычисляется с сохранением пропорций.
+ * В режиме CROP изображение заполняет размер целиком и обрезается по центру.
+ * Качество JPEG от 0 до 1, 0 - качество кодировщика по умолчанию.
+ * mediaTypes - типы файлов, для которых вариант создается при загрузке
+ */
+@Data
+@NoArgsConstructor
+public class VariantProfile {
+    private String name;
+    private int width;
+    private int height;
+    private FitMode fit = FitMode.FIT;
+    private VariantFormat format = VariantFormat.JPEG;
+    private float quality;
+    private Set<MediaType> mediaTypes = EnumSet.of(MediaType.IMAGE);
+
+    public VariantProfile(String name, int width, int height) {
+        this(name, width, height, FitMode.FIT);
+    }
+
+    public VariantProfile(String name, int width, int height, FitMode fit) {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.fit = fit;
+    }
+}
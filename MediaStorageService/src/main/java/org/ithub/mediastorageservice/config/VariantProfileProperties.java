@@ -0,0 +1,55 @@
+package org.ithub.mediastorageservice.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.enums.MediaType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Варианты, которые создаются при загрузке, из настроек media.variants.profiles.<имя>.*,
+ * например media.variants.profiles.thumbnail.width=150. Имя профиля берется из ключа
+ */
+@Slf4j
+@Data
+@Component
+@ConfigurationProperties(prefix = "media.variants")
+public class VariantProfileProperties {
+    private Map<String, VariantProfile> profiles = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void validate() {
+        profiles.forEach((name, profile) -> {
+            profile.setName(name);
+            if (profile.getWidth() < 0 || profile.getHeight() < 0 || profile.getWidth() + profile.getHeight() == 0) {
+                throw new IllegalArgumentException("Variant profile " + name + " must have a positive width or height");
+            }
+            if (profile.getQuality() < 0 || profile.getQuality() > 1) {
+                throw new IllegalArgumentException("Variant profile " + name + " quality must be in [0, 1]");
+            }
+            if (profile.getMediaTypes().isEmpty()) {
+                throw new IllegalArgumentException("Variant profile " + name + " must apply to at least one media type");
+            }
+            // Варианты пока умеем строить только из изображений
+            if (!profile.getMediaTypes().equals(Set.of(MediaType.IMAGE))) {
+                log.warn("Variant profile {} lists {}, variants are only generated for IMAGE", name, profile.getMediaTypes());
+            }
+        });
+        log.info("Variant profiles: {}", profiles.keySet());
+    }
+
+    /**
+     * Профили для файлов указанного типа, в порядке из настроек
+     */
+    public List<VariantProfile> profilesFor(MediaType mediaType) {
+        return profiles.values().stream()
+                .filter(profile -> profile.getMediaTypes().contains(mediaType))
+                .toList();
+    }
+}
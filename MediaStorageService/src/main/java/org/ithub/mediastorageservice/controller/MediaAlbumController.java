@@ -5,13 +5,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.ithub.mediastorageservice.dto.MediaAlbumDTO;
 import org.ithub.mediastorageservice.dto.MediaFileDTO;
+import org.ithub.mediastorageservice.dto.PaginatedResponseDTO;
 import org.ithub.mediastorageservice.service.MediaAlbumService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 @Slf4j
 @RestController
@@ -53,6 +56,26 @@ public class MediaAlbumController {
         return ResponseEntity.ok(albums);
     }
 
+    @GetMapping("/scroll")
+    @Operation(summary = "Просмотр альбомов по курсору", description = "Альбомы от новых к старым. Следующая страница запрашивается по nextCursor, общее число - только при withTotal=true")
+    public ResponseEntity<PaginatedResponseDTO<MediaAlbumDTO>> scrollAlbums(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) Boolean isPublic,
+            @RequestParam(defaultValue = "false") boolean withTotal
+    ) {
+        log.info("Scrolling albums with cursor: {}, size: {}, isPublic: {}", cursor, size, isPublic);
+
+        try {
+            PaginatedResponseDTO<MediaAlbumDTO> albums = mediaAlbumService.scrollAlbums(isPublic, cursor, size, withTotal);
+            log.info("Returned {} albums, last page: {}", albums.getContent().size(), albums.getIsLast());
+            return ResponseEntity.ok(albums);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid scroll request: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
     @GetMapping("/{id}/files")
     @Operation(summary = "Получение списка альбомов", description = "Возвращает список альбомов с пагинацией")
     public ResponseEntity<Page<MediaFileDTO>> getFilesFromAlbum(
@@ -66,7 +89,13 @@ public class MediaAlbumController {
         Sort sort = Sort.by(sortDirection.equalsIgnoreCase("asc") ? Sort.Direction.ASC : Sort.Direction.DESC, sortBy);
         Pageable pageable = PageRequest.of(page, size, sort);
 
-        Page<MediaFileDTO> files = mediaAlbumService.getFilesFromAlbum(id, pageable);
+        Page<MediaFileDTO> files;
+        try {
+            files = mediaAlbumService.getFilesFromAlbum(id, pageable);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid sort for album files: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
 
         log.info("Found {} files in album with id: {}", files.getTotalElements(), id);
         return ResponseEntity.ok(files);
@@ -1,15 +1,27 @@
 package org.ithub.mediastorageservice.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.dto.MediaBatchOperationRequestDTO;
+import org.ithub.mediastorageservice.dto.MediaBatchOperationResultDTO;
+import org.ithub.mediastorageservice.dto.MediaBatchTagRequestDTO;
+import org.ithub.mediastorageservice.dto.MediaContentDTO;
 import org.ithub.mediastorageservice.dto.MediaFileDTO;
+import org.ithub.mediastorageservice.dto.MediaSearchRequestDTO;
+import org.ithub.mediastorageservice.dto.MediaTagQueryDTO;
+import org.ithub.mediastorageservice.dto.MediaTagQueryResultDTO;
 import org.ithub.mediastorageservice.dto.MediaUploadRequestDTO;
+import org.ithub.mediastorageservice.dto.PaginatedResponseDTO;
 import org.ithub.mediastorageservice.enums.MediaType;
 import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.search.MediaSearchService;
+import org.ithub.mediastorageservice.service.MediaBatchOperationService;
+import org.ithub.mediastorageservice.service.MediaContentDeliveryService;
 import org.ithub.mediastorageservice.service.MediaFileService;
 import org.ithub.mediastorageservice.service.MediaVariantService;
-import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -30,6 +42,9 @@ import java.util.Set;
 public class MediaFileController {
     private final MediaFileService mediaFileService;
     private final MediaVariantService mediaVariantService;
+    private final MediaContentDeliveryService mediaContentDeliveryService;
+    private final MediaBatchOperationService mediaBatchOperationService;
+    private final MediaSearchService mediaSearchService;
 
     @GetMapping("/{id}")
     @Operation(summary = "Получение информации о медиа-файле по ID", description = "Возвращает детальную информацию о файле и его вариантах")
@@ -41,19 +56,27 @@ public class MediaFileController {
     }
 
     @GetMapping("/{id}/content")
-    @Operation(summary = "Получение содержимого медиа-файла", description = "Возвращает бинарное содержимое файла")
-    public ResponseEntity<Resource> getContentMediaFileById(@PathVariable Long id) {
+    @Operation(summary = "Получение содержимого медиа-файла", description = "Потоково возвращает бинарное содержимое файла, поддерживает Range и If-Range")
+    public void getContentMediaFileById(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response) throws IOException {
         log.info("Retrieving media file content for id: {}", id);
-        Resource content = mediaFileService.getMediaContent(id);
-        return ResponseEntity.ok(content);
+        MediaContentDTO content = mediaFileService.getMediaContent(id);
+        mediaContentDeliveryService.deliver(content, request, response);
     }
 
     @GetMapping("/{id}/variants/{variantName}")
-    @Operation(summary = "Получение варианта медиа-файла", description = "Возвращает содержимое указанного варианта файла (например, thumbnail)")
-    public ResponseEntity<Resource> getVariantContentById(@PathVariable Long id, @PathVariable String variantName) {
-        log.info("Retrieving variant {} for media file id: {}", variantName, id);
-        Resource content = mediaVariantService.getVariantContent(id, variantName);
-        return ResponseEntity.ok(content);
+    @Operation(summary = "Получение варианта медиа-файла", description = "Потоково возвращает содержимое указанного варианта файла (например, thumbnail или 300x300), поддерживает Range и If-Range. Варианты разрешенных размеров создаются при первом запросе, mode: fit или crop")
+    public void getVariantContentById(@PathVariable Long id, @PathVariable String variantName,
+                                      @RequestParam(required = false) String mode,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.info("Retrieving variant {} (mode: {}) for media file id: {}", variantName, mode, id);
+        MediaContentDTO content;
+        try {
+            content = mediaVariantService.getVariantContent(id, variantName, mode);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid variant request: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        mediaContentDeliveryService.deliver(content, request, response);
     }
 
 
@@ -88,8 +111,98 @@ public class MediaFileController {
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping("/batch")
+    @Operation(summary = "Пакетная операция над медиа-файлами", description = "Удаление, добавление в альбом или удаление из альбома для списка файлов с результатом по каждому файлу")
+    public ResponseEntity<MediaBatchOperationResultDTO> batchOperation(@RequestBody MediaBatchOperationRequestDTO requestDTO) {
+        log.info("Batch operation {} for {} media files", requestDTO.getOperation(),
+                requestDTO.getMediaIds() != null ? requestDTO.getMediaIds().size() : 0);
+
+        try {
+            MediaBatchOperationResultDTO result = mediaBatchOperationService.execute(requestDTO);
+            log.info("Batch operation {} finished: {} succeeded, {} failed",
+                    result.getOperation(), result.getSucceeded(), result.getFailed());
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid batch operation request: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    @PostMapping("/batch/tags")
+    @Operation(summary = "Пакетное изменение тегов", description = "Добавляет и удаляет наборы тегов у списка файлов с результатом по каждому файлу")
+    public ResponseEntity<MediaBatchOperationResultDTO> batchTags(@RequestBody MediaBatchTagRequestDTO requestDTO) {
+        log.info("Batch tagging for {} media files",
+                requestDTO.getMediaIds() != null ? requestDTO.getMediaIds().size() : 0);
+
+        try {
+            MediaBatchOperationResultDTO result = mediaBatchOperationService.applyTags(requestDTO);
+            log.info("Batch tagging finished: {} succeeded, {} failed", result.getSucceeded(), result.getFailed());
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid batch tag request: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    @PostMapping("/search")
+    @Operation(summary = "Поиск медиа-файлов по индексу", description = "Комбинированный поиск по имени файла, тегам, автору, типу, дате и размеру с ранжированием и пагинацией")
+    public ResponseEntity<PaginatedResponseDTO<MediaFileDTO>> searchIndexedFiles(
+            @RequestBody MediaSearchRequestDTO requestDTO,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        log.info("Searching media files by index: {}, page: {}, size: {}", requestDTO, page, size);
+
+        try {
+            PaginatedResponseDTO<MediaFileDTO> results = mediaSearchService.search(requestDTO, page, size);
+            log.info("Found {} media files matching criteria", results.getTotalElements());
+            return ResponseEntity.ok(results);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid search request: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    @PostMapping("/search/tags")
+    @Operation(summary = "Поиск по выражению над тегами", description = "Выражение с AND, OR, NOT и скобками, фильтры по типу и статусу, фасеты по тегам, типам и статусам")
+    public ResponseEntity<MediaTagQueryResultDTO> searchFilesByTags(
+            @RequestBody MediaTagQueryDTO queryDTO,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        log.info("Searching media files by tag expression: {}, page: {}, size: {}", queryDTO, page, size);
+
+        try {
+            MediaTagQueryResultDTO result = mediaSearchService.searchByTags(queryDTO, page, size);
+            log.info("Found {} media files matching tag expression", result.getResults().getTotalElements());
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid tag query: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    @GetMapping("/scroll")
+    @Operation(summary = "Просмотр медиа-файлов по курсору", description = "Фильтрация по тегам и типу, от новых к старым. Следующая страница запрашивается по nextCursor, общее число - только при withTotal=true")
+    public ResponseEntity<PaginatedResponseDTO<MediaFileDTO>> scrollFiles(
+            @RequestParam(required = false) Set<String> tags,
+            @RequestParam(required = false) MediaType mediaType,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal
+    ) {
+        log.info("Scrolling media files with tags: {}, mediaType: {}, cursor: {}, size: {}", tags, mediaType, cursor, size);
+
+        try {
+            PaginatedResponseDTO<MediaFileDTO> results = mediaFileService.scrollFiles(tags, mediaType, cursor, size, withTotal);
+            log.info("Returned {} media files, last page: {}", results.getContent().size(), results.getIsLast());
+            return ResponseEntity.ok(results);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid scroll request: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
     @GetMapping
-    @Operation(summary = "Поиск медиа-файлов", description = "Поиск с фильтрацией по тегам, типу и пагинацией")
+    @Operation(summary = "Поиск медиа-файлов",description = "Поиск с фильтрацией по тегам, типу и пагинацией")
     public ResponseEntity<Page<MediaFileDTO>> searchFiles(
             @RequestParam(required = false) Set<String> tags,
             @RequestParam(required = false) String mediaType,
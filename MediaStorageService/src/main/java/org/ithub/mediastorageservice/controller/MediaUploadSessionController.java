@@ -0,0 +1,105 @@
+package org.ithub.mediastorageservice.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.dto.MediaFileDTO;
+import org.ithub.mediastorageservice.dto.MediaUploadPartDTO;
+import org.ithub.mediastorageservice.dto.MediaUploadRequestDTO;
+import org.ithub.mediastorageservice.dto.MediaUploadSessionCreateRequestDTO;
+import org.ithub.mediastorageservice.dto.MediaUploadSessionDTO;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.service.MediaFileService;
+import org.ithub.mediastorageservice.service.MediaUploadSessionService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.Set;
+
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/media/uploads")
+public class MediaUploadSessionController {
+    private final MediaUploadSessionService mediaUploadSessionService;
+    private final MediaFileService mediaFileService;
+
+    @PostMapping
+    @Operation(summary = "Начало загрузки файла частями", description = "Создает сессию multipart-загрузки и возвращает ее идентификатор")
+    public ResponseEntity<MediaUploadSessionDTO> createSession(@Valid @RequestBody MediaUploadSessionCreateRequestDTO requestDTO) {
+        log.info("Creating upload session for file: {}, size: {}", requestDTO.getOriginalFilename(), requestDTO.getSize());
+        MediaUploadSessionDTO session = mediaUploadSessionService.createSession(requestDTO);
+        return ResponseEntity.status(HttpStatus.CREATED).body(session);
+    }
+
+    @GetMapping("/{sessionId}")
+    @Operation(summary = "Состояние сессии загрузки", description = "Возвращает статус сессии и список уже загруженных частей для продолжения загрузки")
+    public ResponseEntity<MediaUploadSessionDTO> getSession(@PathVariable String sessionId) {
+        log.info("Retrieving upload session: {}", sessionId);
+        return ResponseEntity.ok(handle(() -> mediaUploadSessionService.getSession(sessionId)));
+    }
+
+    @PutMapping("/{sessionId}/parts/{partNumber}")
+    @Operation(summary = "Загрузка части файла", description = "Тело запроса - бинарное содержимое части с заголовком Content-Length. Части можно загружать параллельно")
+    public ResponseEntity<MediaUploadPartDTO> uploadPart(@PathVariable String sessionId, @PathVariable int partNumber,
+                                                         HttpServletRequest request) {
+        log.info("Uploading part {} for upload session: {}", partNumber, sessionId);
+        return ResponseEntity.ok(handle(() -> mediaUploadSessionService.uploadPart(sessionId, partNumber,
+                request.getInputStream(), request.getContentLengthLong())));
+    }
+
+    @PostMapping("/{sessionId}/complete")
+    @Operation(summary = "Завершение загрузки файла", description = "Собирает файл из загруженных частей и создает медиа-файл")
+    public ResponseEntity<MediaFileDTO> completeSession(@PathVariable String sessionId,
+                                                        @RequestBody(required = false) MediaUploadRequestDTO requestDTO) {
+        log.info("Completing upload session: {}", sessionId);
+
+        String description = requestDTO != null ? requestDTO.getDescription() : null;
+        Set<String> tags = requestDTO != null ? requestDTO.getTags() : null;
+
+        MediaFile mediaFile = handle(() -> mediaUploadSessionService.completeSession(sessionId, description, tags));
+        log.info("Upload session {} completed. Media ID: {}", sessionId, mediaFile.getId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(mediaFileService.convertToDTO(mediaFile));
+    }
+
+    @DeleteMapping("/{sessionId}")
+    @Operation(summary = "Отмена загрузки файла", description = "Отменяет multipart-загрузку и удаляет загруженные части")
+    public ResponseEntity<Void> abortSession(@PathVariable String sessionId) {
+        log.info("Aborting upload session: {}", sessionId);
+        handle(() -> {
+            mediaUploadSessionService.abortSession(sessionId);
+            return null;
+        });
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Преобразование ошибок сессии в HTTP-статусы
+     */
+    private <T> T handle(SessionAction<T> action) {
+        try {
+            return action.run();
+        } catch (EntityNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid upload session request: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        } catch (IOException e) {
+            log.error("Error processing upload session: {}", e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to process upload", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SessionAction<T> {
+        T run() throws IOException;
+    }
+}
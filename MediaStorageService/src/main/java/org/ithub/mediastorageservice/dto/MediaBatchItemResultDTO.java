@@ -0,0 +1,16 @@
+package org.ithub.mediastorageservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaBatchItemResultDTO {
+    private Long mediaId;
+    private Boolean success;
+    private String error; // Причина ошибки, если операция для файла не выполнена
+}
@@ -0,0 +1,16 @@
+package org.ithub.mediastorageservice.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class MediaBatchOperationResultDTO {
+    private String operation;
+    private Integer total;
+    private Integer succeeded;
+    private Integer failed;
+    private List<MediaBatchItemResultDTO> results;
+}
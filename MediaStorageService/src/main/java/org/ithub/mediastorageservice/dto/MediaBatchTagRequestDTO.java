@@ -0,0 +1,13 @@
+package org.ithub.mediastorageservice.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Set;
+
+@Data
+public class MediaBatchTagRequestDTO {
+    private List<Long> mediaIds;
+    private Set<String> addTags; // Теги, которые нужно добавить всем файлам
+    private Set<String> removeTags; // Теги, которые нужно удалить у всех файлов
+}
@@ -0,0 +1,18 @@
+package org.ithub.mediastorageservice.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class MediaContentDTO {
+    private String storageKey;
+    private String contentType;
+    private Long size;
+    private String etag; // Может отсутствовать, если хеш содержимого неизвестен
+    private Instant lastModified;
+    private String filename;
+    private boolean memoryCacheable; // Небольшие варианты можно держать в памяти
+}
@@ -13,4 +13,6 @@ public class MediaSearchRequestDTO {
     private LocalDateTime fromDate;
     private LocalDateTime toDate;
     private String uploadedBy;
+    private Long minSize; // Размер файла в байтах
+    private Long maxSize;
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package org.ithub.mediastorageservice.dto;
+
+import lombok.Data;
+
+@Data
+public class MediaTagQueryDTO {
+    private String expression; // Например: travel AND (family OR pets) AND NOT work
+    private String mediaType;
+    private String status;
+    private Integer facetLimit; // Сколько самых частых тегов вернуть в фасетах
+}
@@ -0,0 +1,15 @@
+package org.ithub.mediastorageservice.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@Builder
+public class MediaTagQueryResultDTO {
+    private PaginatedResponseDTO<MediaFileDTO> results;
+    private Map<String, Long> tagFacets;
+    private Map<String, Long> mediaTypeFacets;
+    private Map<String, Long> statusFacets;
+}
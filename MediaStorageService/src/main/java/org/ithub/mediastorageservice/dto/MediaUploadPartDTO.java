@@ -0,0 +1,12 @@
+package org.ithub.mediastorageservice.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class MediaUploadPartDTO {
+    private Integer partNumber;
+    private String etag;
+    private Long size;
+}
@@ -0,0 +1,14 @@
+package org.ithub.mediastorageservice.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+@Data
+public class MediaUploadSessionCreateRequestDTO {
+    @NotBlank(message = "Filename is required")
+    private String originalFilename;
+
+    private String contentType;
+
+    private Long size; // Опционально: ожидаемый размер файла
+}
@@ -0,0 +1,23 @@
+package org.ithub.mediastorageservice.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+public class MediaUploadSessionDTO {
+    private String sessionId;
+    private String originalFilename;
+    private String contentType;
+    private Long expectedSize;
+    private String status;
+    private Long minPartSize;
+    private Long maxPartSize;
+    private List<MediaUploadPartDTO> parts; // Уже загруженные части, для продолжения загрузки
+    private Long uploadedBytes;
+    private Long mediaFileId;
+    private LocalDateTime createdAt;
+}
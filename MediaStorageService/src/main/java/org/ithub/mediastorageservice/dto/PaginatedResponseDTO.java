@@ -15,4 +15,5 @@ public class PaginatedResponseDTO<T> {
     private Integer totalPages;
     private Boolean isFirst;
     private Boolean isLast;
+    private String nextCursor; // Курсор следующей страницы в режиме просмотра по курсору, null на последней
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package org.ithub.mediastorageservice.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class StoredObjectDTO {
+    private String storageKey;
+    private Long size;
+    private String contentHash; // SHA-256 в hex
+    private byte[] header; // Первые байты файла для определения размеров изображения
+}
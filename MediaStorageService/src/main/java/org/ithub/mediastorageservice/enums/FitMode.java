@@ -0,0 +1,6 @@
+package org.ithub.mediastorageservice.enums;
+
+public enum FitMode {
+    FIT,  // Изображение целиком вписывается в размер с сохранением пропорций
+    CROP  // Изображение заполняет размер полностью, лишнее обрезается по центру
+}
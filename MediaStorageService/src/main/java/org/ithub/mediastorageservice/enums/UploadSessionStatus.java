@@ -0,0 +1,9 @@
+package org.ithub.mediastorageservice.enums;
+
+public enum UploadSessionStatus {
+    ACTIVE,     // Части принимаются
+    COMPLETING, // Идет сборка объекта и создание MediaFile
+    COMPLETED,  // Объект собран, создан MediaFile
+    ABORTED,    // Загрузка отменена, части удалены
+    EXPIRED     // Сессия брошена клиентом, загрузка отменена очисткой
+}
@@ -0,0 +1,13 @@
+package org.ithub.mediastorageservice.enums;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum VariantFormat {
+    JPEG("image/jpeg"),
+    PNG("image/png"); // Без потерь, для графики с четкими краями
+
+    private final String contentType;
+}
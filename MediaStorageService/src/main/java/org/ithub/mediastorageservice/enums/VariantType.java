@@ -1,9 +0,0 @@
-package org.ithub.mediastorageservice.enums;
-
-public enum VariantType {
-    THUMBNAIL,
-    MEDIUM,
-    LARGE,
-    INSTAGRAM,
-    TELEGRAM
-}
@@ -0,0 +1,18 @@
+package org.ithub.mediastorageservice.image;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Информация об изображении, прочитанная из заголовка файла
+ */
+@Data
+@Builder
+public class ImageHeaderInfo {
+    private String format;     // jpeg, png, gif, bmp или имя формата ImageIO
+    private int width;
+    private int height;
+    private String colorModel; // GRAY, RGB, RGBA, YCbCr, CMYK, INDEXED...
+    @Builder.Default
+    private int orientation = 1; // EXIF Orientation (1-8), 1 - без поворота
+}
@@ -0,0 +1,287 @@
+package org.ithub.mediastorageservice.image;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Определение размеров, цветовой модели и ориентации изображения по первым
+ * килобайтам файла, без декодирования растра.
+ * JPEG, PNG, GIF и BMP разбираются вручную, остальные форматы - через ImageReader
+ */
+@Slf4j
+@Component
+public class ImageProbe {
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    /**
+     * Чтение информации из заголовка. Пустой результат означает,
+     * что формат неизвестен или заголовок обрезан
+     */
+    public Optional<ImageHeaderInfo> probe(byte[] header) {
+        if (header == null || header.length < 12) {
+            return Optional.empty();
+        }
+
+        try {
+            ImageHeaderInfo info;
+            if (u8(header, 0) == 0xFF && u8(header, 1) == 0xD8) {
+                info = probeJpeg(header);
+            } else if (startsWith(header, "\u0089PNG")) {
+                info = probePng(header);
+            } else if (startsWith(header, "GIF87a") || startsWith(header, "GIF89a")) {
+                info = probeGif(header);
+            } else if (startsWith(header, "BM")) {
+                info = probeBmp(header);
+            } else {
+                info = probeWithImageReader(header);
+            }
+            return Optional.ofNullable(info);
+        } catch (RuntimeException | IOException e) {
+            // Заголовок обрезан или поврежден; ImageReader сторонних форматов может бросать и непроверяемые
+            // исключения - вместо ошибки загрузки файл будет декодирован целиком
+            log.debug("Cannot probe image header: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * JPEG: ищем маркер SOFn, попутно читаем ориентацию из APP1/Exif
+     */
+    private ImageHeaderInfo probeJpeg(byte[] data) {
+        int orientation = 1;
+        int pos = 2;
+
+        while (pos + 4 <= data.length) {
+            if (u8(data, pos) != 0xFF) {
+                return null;
+            }
+            int marker = u8(data, pos + 1);
+            // Заполняющие байты 0xFF
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            // Маркеры без длины
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                pos += 2;
+                continue;
+            }
+            // Начало сжатых данных, дальше SOF не встретится
+            if (marker == 0xDA || marker == 0xD9) {
+                return null;
+            }
+
+            int length = u16be(data, pos + 2);
+            int segmentStart = pos + 4;
+
+            if (marker == 0xE1 && startsWith(data, segmentStart, "Exif\0\0")) {
+                orientation = readExifOrientation(data, segmentStart + 6, Math.min(data.length, pos + 2 + length));
+            } else if (isStartOfFrame(marker)) {
+                int height = u16be(data, segmentStart + 1);
+                int width = u16be(data, segmentStart + 3);
+                int components = u8(data, segmentStart + 5);
+
+                return ImageHeaderInfo.builder()
+                        .format("jpeg")
+                        .width(width)
+                        .height(height)
+                        .colorModel(switch (components) {
+                            case 1 -> "GRAY";
+                            case 3 -> "YCbCr";
+                            case 4 -> "CMYK";
+                            default -> "UNKNOWN";
+                        })
+                        .orientation(orientation)
+                        .build();
+            }
+
+            pos += 2 + length;
+        }
+        return null;
+    }
+
+    private boolean isStartOfFrame(int marker) {
+        // SOF0-SOF15, кроме DHT (C4), JPG (C8) и DAC (CC)
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    /**
+     * Чтение тега Orientation из TIFF-структуры Exif (IFD0)
+     */
+    private int readExifOrientation(byte[] data, int tiffStart, int end) {
+        if (tiffStart + 8 > end) {
+            return 1;
+        }
+        boolean littleEndian = u8(data, tiffStart) == 'I';
+        int ifdOffset = u32(data, tiffStart + 4, littleEndian);
+        int ifdStart = tiffStart + ifdOffset;
+        if (ifdOffset < 8 || ifdStart + 2 > end) {
+            return 1;
+        }
+
+        int entries = u16(data, ifdStart, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifdStart + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (u16(data, entry, littleEndian) == EXIF_ORIENTATION_TAG) {
+                int value = u16(data, entry + 8, littleEndian);
+                return value >= 1 && value <= 8 ? value : 1;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * PNG: размеры и тип цвета из чанка IHDR
+     */
+    private ImageHeaderInfo probePng(byte[] data) {
+        if (!startsWith(data, 12, "IHDR")) {
+            return null;
+        }
+        int colorType = u8(data, 25);
+
+        return ImageHeaderInfo.builder()
+                .format("png")
+                .width(u32(data, 16, false))
+                .height(u32(data, 20, false))
+                .colorModel(switch (colorType) {
+                    case 0 -> "GRAY";
+                    case 2 -> "RGB";
+                    case 3 -> "INDEXED";
+                    case 4 -> "GRAY_ALPHA";
+                    case 6 -> "RGBA";
+                    default -> "UNKNOWN";
+                })
+                .build();
+    }
+
+    /**
+     * GIF: логический размер экрана
+     */
+    private ImageHeaderInfo probeGif(byte[] data) {
+        return ImageHeaderInfo.builder()
+                .format("gif")
+                .width(u16(data, 6, true))
+                .height(u16(data, 8, true))
+                .colorModel("INDEXED")
+                .build();
+    }
+
+    /**
+     * BMP: размеры и глубина цвета из DIB-заголовка
+     */
+    private ImageHeaderInfo probeBmp(byte[] data) {
+        int dibHeaderSize = u32(data, 14, true);
+        int width;
+        int height;
+        int bitsPerPixel;
+
+        if (dibHeaderSize == 12) {
+            // BITMAPCOREHEADER
+            width = u16(data, 18, true);
+            height = u16(data, 20, true);
+            bitsPerPixel = u16(data, 24, true);
+        } else if (dibHeaderSize >= 40) {
+            // BITMAPINFOHEADER и новее; отрицательная высота означает хранение сверху вниз
+            width = u32(data, 18, true);
+            height = Math.abs(u32(data, 22, true));
+            bitsPerPixel = u16(data, 28, true);
+        } else {
+            return null;
+        }
+
+        return ImageHeaderInfo.builder()
+                .format("bmp")
+                .width(width)
+                .height(height)
+                .colorModel(bitsPerPixel <= 8 ? "INDEXED" : bitsPerPixel == 32 ? "RGBA" : "RGB")
+                .build();
+    }
+
+    /**
+     * Остальные форматы: ImageReader читает только заголовок, растр не декодируется
+     */
+    private ImageHeaderInfo probeWithImageReader(byte[] data) throws IOException {
+        try (ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                ImageTypeSpecifier type = reader.getRawImageType(0);
+
+                return ImageHeaderInfo.builder()
+                        .format(reader.getFormatName().toLowerCase())
+                        .width(reader.getWidth(0))
+                        .height(reader.getHeight(0))
+                        .colorModel(type != null ? describeColorModel(type.getColorModel()) : "UNKNOWN")
+                        .build();
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private String describeColorModel(ColorModel colorModel) {
+        if (colorModel instanceof IndexColorModel) {
+            return "INDEXED";
+        }
+        int colorComponents = colorModel.getNumColorComponents();
+        String base = colorComponents == 1 ? "GRAY" : colorComponents == 4 ? "CMYK" : "RGB";
+        return colorModel.hasAlpha() ? base + "_ALPHA" : base;
+    }
+
+    private static boolean startsWith(byte[] data, String prefix) {
+        return startsWith(data, 0, prefix);
+    }
+
+    private static boolean startsWith(byte[] data, int offset, String prefix) {
+        byte[] bytes = prefix.getBytes(StandardCharsets.ISO_8859_1);
+        if (offset + bytes.length > data.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (data[offset + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int u8(byte[] data, int pos) {
+        return data[pos] & 0xFF;
+    }
+
+    private static int u16be(byte[] data, int pos) {
+        return (u8(data, pos) << 8) | u8(data, pos + 1);
+    }
+
+    private static int u16(byte[] data, int pos, boolean littleEndian) {
+        return littleEndian ? (u8(data, pos + 1) << 8) | u8(data, pos) : u16be(data, pos);
+    }
+
+    private static int u32(byte[] data, int pos, boolean littleEndian) {
+        if (littleEndian) {
+            return u8(data, pos) | (u8(data, pos + 1) << 8) | (u8(data, pos + 2) << 16) | (u8(data, pos + 3) << 24);
+        }
+        return (u8(data, pos) << 24) | (u8(data, pos + 1) << 16) | (u8(data, pos + 2) << 8) | u8(data, pos + 3);
+    }
+}
@@ -0,0 +1,395 @@
+package org.ithub.mediastorageservice.image;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Масштабирование изображений разделимым фильтром (Lanczos-3 или Mitchell) напрямую по массиву пикселей.
+ * Сильное уменьшение сначала выполняется последовательными делениями пополам (усреднение 2x2),
+ * затем горизонтальный и вертикальный проходы фильтра. Строки делятся между потоками ForkJoinPool,
+ * результат записывается прямо в растр TYPE_INT_RGB
+ */
+@Slf4j
+@Component
+public class ImageResampler {
+    // Изображения меньше этого числа пикселей обрабатываются в вызывающем потоке
+    private static final int PARALLEL_THRESHOLD = 256 * 256;
+    private static final int MIN_ROWS_PER_TASK = 16;
+
+    private final Filter filter;
+    private final ForkJoinPool pool;
+
+    public ImageResampler(@Value("${media.images.resample.filter:LANCZOS3}") Filter filter,
+                          @Value("${media.images.resample.parallelism:0}") int parallelism) {
+        this.filter = filter;
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = new ForkJoinPool(threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("resample-worker-" + threadNumber.incrementAndGet());
+            return thread;
+        }, null, false);
+        log.info("Image resampler: filter={}, parallelism={}", filter, threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Масштабирование до точного размера. Прозрачность накладывается на черный фон,
+     * как при рисовании в TYPE_INT_RGB
+     */
+    public BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        // Деление пополам почти ничего не теряет, пока результат остается вдвое больше цели
+        int[] pixels;
+        if (width / 2 >= targetWidth * 2 && height / 2 >= targetHeight * 2) {
+            pixels = readHalved(source);
+            width /= 2;
+            height /= 2;
+        } else {
+            pixels = readRgb(source);
+        }
+        while (width / 2 >= targetWidth * 2 && height / 2 >= targetHeight * 2) {
+            pixels = halve(pixels, width, height);
+            width /= 2;
+            height /= 2;
+        }
+
+        BufferedImage result = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        int[] output = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+        if (width == targetWidth && height == targetHeight) {
+            System.arraycopy(pixels, 0, output, 0, output.length);
+            return result;
+        }
+
+        Contributions horizontal = contributions(width, targetWidth);
+        Contributions vertical = contributions(height, targetHeight);
+
+        // Промежуточный результат горизонтального прохода: по три канала на пиксель
+        float[] temp = new float[targetWidth * height * 3];
+        int[] sourcePixels = pixels;
+        int sourceWidth = width;
+        forEachRows(height, targetWidth, (from, to) -> horizontalPass(sourcePixels, sourceWidth, temp, targetWidth, horizontal, from, to));
+        forEachRows(targetHeight, targetWidth, (from, to) -> verticalPass(temp, output, targetWidth, vertical, from, to));
+        return result;
+    }
+
+    /**
+     * Горизонтальный проход: строки источника [from, to) сжимаются до ширины цели
+     */
+    private static void horizontalPass(int[] source, int sourceWidth, float[] temp, int targetWidth,
+                                       Contributions contributions, int from, int to) {
+        for (int y = from; y < to; y++) {
+            int rowOffset = y * sourceWidth;
+            int outOffset = y * targetWidth * 3;
+            for (int x = 0; x < targetWidth; x++) {
+                int start = contributions.start[x];
+                int count = contributions.count[x];
+                int weightOffset = x * contributions.stride;
+                float r = 0;
+                float g = 0;
+                float b = 0;
+                for (int k = 0; k < count; k++) {
+                    int pixel = source[rowOffset + start + k];
+                    float weight = contributions.weights[weightOffset + k];
+                    r += weight * ((pixel >> 16) & 0xFF);
+                    g += weight * ((pixel >> 8) & 0xFF);
+                    b += weight * (pixel & 0xFF);
+                }
+                temp[outOffset + x * 3] = r;
+                temp[outOffset + x * 3 + 1] = g;
+                temp[outOffset + x * 3 + 2] = b;
+            }
+        }
+    }
+
+    /**
+     * Вертикальный проход: строки результата [from, to) из промежуточного буфера
+     */
+    private static void verticalPass(float[] temp, int[] output, int targetWidth,
+                                     Contributions contributions, int from, int to) {
+        int rowLength = targetWidth * 3;
+        for (int y = from; y < to; y++) {
+            int start = contributions.start[y];
+            int count = contributions.count[y];
+            int weightOffset = y * contributions.stride;
+            for (int x = 0; x < targetWidth; x++) {
+                int column = x * 3;
+                float r = 0;
+                float g = 0;
+                float b = 0;
+                for (int k = 0; k < count; k++) {
+                    int index = (start + k) * rowLength + column;
+                    float weight = contributions.weights[weightOffset + k];
+                    r += weight * temp[index];
+                    g += weight * temp[index + 1];
+                    b += weight * temp[index + 2];
+                }
+                output[y * targetWidth + x] = (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+            }
+        }
+    }
+
+    /**
+     * Уменьшение вдвое усреднением блоков 2x2. Нечетные последний столбец и строка отбрасываются
+     */
+    private int[] halve(int[] pixels, int width, int height) {
+        int halfWidth = width / 2;
+        int[] result = new int[halfWidth * (height / 2)];
+        forEachRows(height / 2, halfWidth, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                averageRows(pixels, 2 * y * width, (2 * y + 1) * width, result, y * halfWidth, halfWidth);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Первое деление пополам прямо при чтении источника: пары строк читаются в небольшой буфер,
+     * и полноразмерная копия изображения не создается
+     */
+    private int[] readHalved(BufferedImage image) {
+        int width = image.getWidth();
+        int halfWidth = width / 2;
+        int[] result = new int[halfWidth * (image.getHeight() / 2)];
+        forEachRows(image.getHeight() / 2, halfWidth, (from, to) -> {
+            int[] rows = new int[width * 2];
+            for (int y = from; y < to; y++) {
+                readRows(image, 2 * y, 2 * y + 2, rows, 0);
+                averageRows(rows, 0, width, result, y * halfWidth, halfWidth);
+            }
+        });
+        return result;
+    }
+
+    private static void averageRows(int[] pixels, int top, int bottom, int[] result, int offset, int halfWidth) {
+        for (int x = 0; x < halfWidth; x++) {
+            int p0 = pixels[top + 2 * x];
+            int p1 = pixels[top + 2 * x + 1];
+            int p2 = pixels[bottom + 2 * x];
+            int p3 = pixels[bottom + 2 * x + 1];
+            int r = (((p0 >> 16) & 0xFF) + ((p1 >> 16) & 0xFF) + ((p2 >> 16) & 0xFF) + ((p3 >> 16) & 0xFF) + 2) >> 2;
+            int g = (((p0 >> 8) & 0xFF) + ((p1 >> 8) & 0xFF) + ((p2 >> 8) & 0xFF) + ((p3 >> 8) & 0xFF) + 2) >> 2;
+            int b = ((p0 & 0xFF) + (p1 & 0xFF) + (p2 & 0xFF) + (p3 & 0xFF) + 2) >> 2;
+            result[offset + x] = (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private int[] readRgb(BufferedImage image) {
+        int width = image.getWidth();
+        int[] pixels = new int[width * image.getHeight()];
+        forEachRows(image.getHeight(), width, (from, to) -> readRows(image, from, to, pixels, from * width));
+        return pixels;
+    }
+
+    /**
+     * Чтение строк [from, to) в массив 0xRRGGBB начиная с offset. Для TYPE_3BYTE_BGR
+     * (так ImageIO декодирует JPEG) и TYPE_INT_RGB данные читаются прямо из буфера растра,
+     * в том числе для подызображений
+     */
+    private static void readRows(BufferedImage image, int from, int to, int[] pixels, int offset) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+        int originX = -raster.getSampleModelTranslateX();
+        int originY = -raster.getSampleModelTranslateY();
+
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR
+                && raster.getDataBuffer() instanceof DataBufferByte buffer
+                && raster.getSampleModel() instanceof ComponentSampleModel model) {
+            byte[] data = buffer.getData();
+            int stride = model.getScanlineStride();
+            int pixelStride = model.getPixelStride();
+            int[] bandOffsets = model.getBandOffsets();
+            for (int y = from; y < to; y++) {
+                int index = buffer.getOffset() + (y + originY) * stride + originX * pixelStride;
+                int out = offset + (y - from) * width;
+                for (int x = 0; x < width; x++, index += pixelStride) {
+                    pixels[out + x] = ((data[index + bandOffsets[0]] & 0xFF) << 16)
+                            | ((data[index + bandOffsets[1]] & 0xFF) << 8)
+                            | (data[index + bandOffsets[2]] & 0xFF);
+                }
+            }
+            return;
+        }
+
+        if (image.getType() == BufferedImage.TYPE_INT_RGB
+                && raster.getDataBuffer() instanceof DataBufferInt buffer
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel model) {
+            int[] data = buffer.getData();
+            int stride = model.getScanlineStride();
+            for (int y = from; y < to; y++) {
+                System.arraycopy(data, buffer.getOffset() + (y + originY) * stride + originX,
+                        pixels, offset + (y - from) * width, width);
+            }
+            return;
+        }
+
+        // Остальные форматы: преобразование через цветовую модель, прозрачность - на черный фон
+        int length = (to - from) * width;
+        image.getRGB(0, from, width, to - from, pixels, offset, width);
+        if (image.getColorModel().hasAlpha()) {
+            for (int i = offset; i < offset + length; i++) {
+                int alpha = pixels[i] >>> 24;
+                int pixel = pixels[i];
+                pixels[i] = ((((pixel >> 16) & 0xFF) * alpha / 255) << 16)
+                        | ((((pixel >> 8) & 0xFF) * alpha / 255) << 8)
+                        | ((pixel & 0xFF) * alpha / 255);
+            }
+        }
+    }
+
+    /**
+     * Веса фильтра для каждого выходного пикселя. При уменьшении ядро растягивается на коэффициент
+     * масштаба, чтобы усреднять все попадающие в пиксель точки источника. Точки за краем
+     * заменяются крайней точкой, сумма весов нормируется к 1
+     */
+    private Contributions contributions(int sourceSize, int targetSize) {
+        double scale = (double) sourceSize / targetSize;
+        double filterScale = Math.max(1.0, scale);
+        double support = filter.radius * filterScale;
+        int stride = (int) Math.ceil(support) * 2 + 1;
+
+        int[] start = new int[targetSize];
+        int[] count = new int[targetSize];
+        float[] weights = new float[targetSize * stride];
+        double[] raw = new double[stride];
+
+        for (int i = 0; i < targetSize; i++) {
+            double center = (i + 0.5) * scale - 0.5;
+            int left = Math.max(0, (int) Math.ceil(center - support));
+            int right = Math.min(sourceSize - 1, (int) Math.floor(center + support));
+            // Соседи за краем складываются в крайние точки
+            int firstTap = (int) Math.ceil(center - support);
+            int lastTap = (int) Math.floor(center + support);
+
+            int n = right - left + 1;
+            Arrays.fill(raw, 0, n, 0.0);
+            double sum = 0;
+            for (int tap = firstTap; tap <= lastTap; tap++) {
+                double weight = filter.value((tap - center) / filterScale);
+                int clamped = Math.min(right, Math.max(left, tap));
+                raw[clamped - left] += weight;
+                sum += weight;
+            }
+
+            start[i] = left;
+            count[i] = n;
+            for (int k = 0; k < n; k++) {
+                weights[i * stride + k] = (float) (sum != 0 ? raw[k] / sum : (k == 0 ? 1 : 0));
+            }
+        }
+        return new Contributions(start, count, weights, stride);
+    }
+
+    /**
+     * Выполнение задачи по диапазонам строк: параллельно для больших изображений,
+     * в вызывающем потоке для маленьких
+     */
+    private void forEachRows(int rows, int width, RowTask task) {
+        if ((long) rows * width < PARALLEL_THRESHOLD || pool.getParallelism() == 1) {
+            task.run(0, rows);
+            return;
+        }
+        int rowsPerTask = Math.max(MIN_ROWS_PER_TASK, rows / (pool.getParallelism() * 4));
+        pool.invoke(new RowRangeAction(task, 0, rows, rowsPerTask));
+    }
+
+    private static int clamp(float value) {
+        int rounded = Math.round(value);
+        return rounded < 0 ? 0 : Math.min(255, rounded);
+    }
+
+    /**
+     * Ядра фильтра и их радиус в пикселях источника
+     */
+    public enum Filter {
+        // Резче, с небольшим звоном на контрастных краях
+        LANCZOS3(3) {
+            @Override
+            double value(double x) {
+                if (x == 0) {
+                    return 1;
+                }
+                if (Math.abs(x) >= 3) {
+                    return 0;
+                }
+                double px = Math.PI * x;
+                return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+            }
+        },
+        // Mitchell-Netravali (B = C = 1/3): мягче, почти без звона
+        MITCHELL(2) {
+            @Override
+            double value(double x) {
+                double b = 1.0 / 3;
+                double c = 1.0 / 3;
+                double ax = Math.abs(x);
+                if (ax < 1) {
+                    return ((12 - 9 * b - 6 * c) * ax * ax * ax + (-18 + 12 * b + 6 * c) * ax * ax + (6 - 2 * b)) / 6;
+                }
+                if (ax < 2) {
+                    return ((-b - 6 * c) * ax * ax * ax + (6 * b + 30 * c) * ax * ax + (-12 * b - 48 * c) * ax + (8 * b + 24 * c)) / 6;
+                }
+                return 0;
+            }
+        };
+
+        private final int radius;
+
+        Filter(int radius) {
+            this.radius = radius;
+        }
+
+        abstract double value(double x);
+    }
+
+    @FunctionalInterface
+    private interface RowTask {
+        void run(int from, int to);
+    }
+
+    private static final class RowRangeAction extends RecursiveAction {
+        private final RowTask task;
+        private final int from;
+        private final int to;
+        private final int rowsPerTask;
+
+        private RowRangeAction(RowTask task, int from, int to, int rowsPerTask) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.rowsPerTask = rowsPerTask;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= rowsPerTask) {
+                task.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RowRangeAction(task, from, middle, rowsPerTask), new RowRangeAction(task, middle, to, rowsPerTask));
+        }
+    }
+
+    private record Contributions(int[] start, int[] count, float[] weights, int stride) {
+    }
+}
@@ -0,0 +1,146 @@
+package org.ithub.mediastorageservice.image;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * Кодирование вариантов в JPEG. Вместо ImageIO.write на каждый вызов у каждого потока
+ * свой ImageWriter и свой буфер вывода, которые переиспользуются между вызовами.
+ * Качество задается вариантом, прогрессивный режим и оптимизированные таблицы Хаффмана - настройками
+ */
+@Slf4j
+@Component
+public class JpegEncoder {
+    // Оценка размера JPEG на пиксель для начальной емкости буфера, с запасом для фотографий
+    private static final double ESTIMATED_BYTES_PER_PIXEL = 0.5;
+    private static final int MIN_BUFFER_SIZE = 16 * 1024;
+    // Буферы больше этого размера не удерживаются потоком после кодирования
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final float defaultQuality;
+    private final boolean progressive;
+    private final boolean optimizeHuffman;
+
+    private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+
+    public JpegEncoder(@Value("${media.images.jpeg.quality:0.8}") float defaultQuality,
+                       @Value("${media.images.jpeg.progressive:false}") boolean progressive,
+                       @Value("${media.images.jpeg.optimize-huffman:true}") boolean optimizeHuffman) {
+        if (defaultQuality <= 0 || defaultQuality > 1) {
+            throw new IllegalArgumentException("JPEG quality must be in (0, 1]: " + defaultQuality);
+        }
+        this.defaultQuality = defaultQuality;
+        this.progressive = progressive;
+        this.optimizeHuffman = optimizeHuffman;
+        log.info("JPEG encoder: quality={}, progressive={}, optimizeHuffman={}", defaultQuality, progressive, optimizeHuffman);
+    }
+
+    /**
+     * Кодирование с качеством по умолчанию
+     */
+    public byte[] encode(BufferedImage image) {
+        return encode(image, 0);
+    }
+
+    /**
+     * Кодирование с заданным качеством от 0 до 1; 0 означает качество по умолчанию
+     */
+    public byte[] encode(BufferedImage image, float quality) {
+        Encoder encoder = encoders.get();
+        try {
+            return encoder.encode(image, quality > 0 ? Math.min(1f, quality) : defaultQuality);
+        } catch (IOException e) {
+            discard(encoder);
+            throw new UncheckedIOException("Failed to encode JPEG", e);
+        } catch (RuntimeException e) {
+            discard(encoder);
+            throw e;
+        }
+    }
+
+    /**
+     * После ошибки состояние writer не гарантировано, поток получит новый при следующем вызове
+     */
+    private void discard(Encoder encoder) {
+        encoder.writer.dispose();
+        encoders.remove();
+    }
+
+    /**
+     * Writer, параметры и буфер одного потока
+     */
+    private final class Encoder {
+        private final ImageWriter writer;
+        private final ImageWriteParam param;
+        private final ReusableOutputStream output = new ReusableOutputStream();
+
+        private Encoder() {
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+            if (!writers.hasNext()) {
+                throw new IllegalStateException("No JPEG ImageWriter available");
+            }
+            writer = writers.next();
+            param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            if (progressive) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            if (optimizeHuffman && param instanceof JPEGImageWriteParam jpegParam) {
+                jpegParam.setOptimizeHuffmanTables(true);
+            }
+        }
+
+        private byte[] encode(BufferedImage image, float quality) throws IOException {
+            param.setCompressionQuality(quality);
+            output.prepare((int) Math.min(MAX_RETAINED_BUFFER_SIZE,
+                    Math.max(MIN_BUFFER_SIZE, (long) image.getWidth() * image.getHeight() * ESTIMATED_BYTES_PER_PIXEL)));
+
+            // Кэш в памяти вместо временного файла, который ImageIO создает по умолчанию
+            try (ImageOutputStream stream = new MemoryCacheImageOutputStream(output)) {
+                writer.setOutput(stream);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.setOutput(null);
+            }
+
+            byte[] result = output.toByteArray();
+            output.release();
+            return result;
+        }
+    }
+
+    /**
+     * ByteArrayOutputStream с доступом к внутреннему буферу: емкость задается заранее,
+     * а сам буфер остается у потока до следующего кодирования
+     */
+    private static final class ReusableOutputStream extends ByteArrayOutputStream {
+
+        private void prepare(int expectedSize) {
+            reset();
+            if (buf.length < expectedSize) {
+                buf = new byte[expectedSize];
+            }
+        }
+
+        private void release() {
+            if (buf.length > MAX_RETAINED_BUFFER_SIZE) {
+                buf = new byte[MIN_BUFFER_SIZE];
+            }
+            reset();
+        }
+    }
+}
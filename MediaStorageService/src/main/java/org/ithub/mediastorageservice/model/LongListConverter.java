@@ -0,0 +1,36 @@
+package org.ithub.mediastorageservice.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Хранение короткого списка id в одной колонке в виде "1,2,3"
+ */
+@Converter
+public class LongListConverter implements AttributeConverter<List<Long>, String> {
+
+    @Override
+    public String convertToDatabaseColumn(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return "";
+        }
+        return ids.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+    }
+
+    @Override
+    public List<Long> convertToEntityAttribute(String value) {
+        if (value == null || value.isBlank()) {
+            return new ArrayList<>();
+        }
+        return Arrays.stream(value.split(","))
+                .map(Long::valueOf)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+}
@@ -10,7 +10,11 @@ import java.util.List;
 
 @Data
 @Entity
-@Table(name = "media_albums")
+@Table(name = "media_albums", indexes = {
+        // Сортировка и курсор (createdAt, id) для постраничного просмотра
+        @Index(name = "idx_album_created_at_id", columnList = "createdAt, id"),
+        @Index(name = "idx_album_public_created_at_id", columnList = "isPublic, createdAt, id")
+})
 @NoArgsConstructor
 public class MediaAlbum {
     @Id
@@ -29,11 +33,21 @@ public class MediaAlbum {
 
     private Boolean isPublic = false;
 
+    // Сводка для списков альбомов, обновляется при добавлении и удалении файлов
+    private Integer itemCount = 0;
+
+    @Convert(converter = LongListConverter.class)
+    private List<Long> previewMediaIds = new ArrayList<>();
+
     @ManyToMany
     @JoinTable(
             name = "media_album_items",
             joinColumns = @JoinColumn(name = "album_id"),
-            inverseJoinColumns = @JoinColumn(name = "media_id")
+            inverseJoinColumns = @JoinColumn(name = "media_id"),
+            indexes = {
+                    @Index(name = "idx_album_items_album_media", columnList = "album_id, media_id", unique = true),
+                    @Index(name = "idx_album_items_media", columnList = "media_id")
+            }
     )
     private List<MediaFile> mediaFiles = new ArrayList<>();
 
@@ -0,0 +1,33 @@
+package org.ithub.mediastorageservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Объект в хранилище (оригинал или вариант) со счетчиком ссылок.
+ * Одинаковое содержимое хранится один раз, а объект удаляется из MinIO
+ * только когда на него не ссылается ни одна запись
+ */
+@Entity
+@Table(name = "media_blobs", indexes = {
+        @Index(name = "idx_blob_content_hash", columnList = "contentHash")
+})
+@Data
+@NoArgsConstructor
+public class MediaBlob {
+    @Id
+    private String storageKey;
+
+    // SHA-256 содержимого, есть только у оригиналов, загруженных одним потоком
+    @Column(length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private Integer refCount;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -5,25 +5,25 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import lombok.RequiredArgsConstructor;
 import org.ithub.mediastorageservice.enums.MediaStatus;
 import org.ithub.mediastorageservice.enums.MediaType;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 @Entity
 @Table(name = "media_files", indexes = {
         @Index(name = "idx_media_status", columnList = "status"),
         @Index(name = "idx_media_type", columnList = "mediaType"),
-        @Index(name = "idx_created_at", columnList = "createdAt")
+        // Сортировка и курсор (createdAt, id) для постраничного просмотра
+        @Index(name = "idx_media_created_at_id", columnList = "createdAt, id"),
+        @Index(name = "idx_media_type_created_at_id", columnList = "mediaType, createdAt, id"),
+        @Index(name = "idx_media_content_hash", columnList = "contentHash"),
+        @Index(name = "idx_media_storage_key", columnList = "storageKey")
 })
 @Data
 @NoArgsConstructor
-@RequiredArgsConstructor
 @AllArgsConstructor
 public class MediaFile {
     @Id
@@ -36,7 +36,12 @@ public class MediaFile {
     @Column(nullable = false)
     private Long size;
 
-    @Column(nullable = false, unique = true)
+    // SHA-256 содержимого (hex), считается во время загрузки
+    @Column(length = 64)
+    private String contentHash;
+
+    // Файлы с одинаковым содержимым ссылаются на один объект, см. MediaBlob
+    @Column(nullable = false)
     private String storageKey;
 
     @Enumerated(EnumType.STRING)
@@ -55,6 +60,8 @@ public class MediaFile {
     // Для изображений и видео
     private Integer width;
     private Integer height;
+    private String colorModel;
+    private Integer orientation; // EXIF Orientation (1-8)
 
     // Метаданные
     @Column(columnDefinition = "TEXT")
@@ -65,11 +72,6 @@ public class MediaFile {
 
     private LocalDateTime updatedAt;
 
-    @ElementCollection
-    @CollectionTable(name = "media_tags", joinColumns = @JoinColumn(name = "media_id"))
-    @Column(name = "tag")
-    private Set<String> tags = new HashSet<>();
-
     // Ссылки на варианты (разные размеры)
     @OneToMany(mappedBy = "mediaFile", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<MediaVariant> variants = new ArrayList<>();
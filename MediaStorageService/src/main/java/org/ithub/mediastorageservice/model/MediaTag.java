@@ -10,12 +10,17 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "media_tags", indexes = {
         @Index(name = "idx_tag_name", columnList = "name")
+}, uniqueConstraints = {
+        // Повторное добавление тега файлу игнорируется через ON CONFLICT
+        @UniqueConstraint(name = "uk_media_tag_media_name", columnNames = {"media_id", "name"})
 })
 @Data
 @NoArgsConstructor
 public class MediaTag {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Последовательность с шагом 50 вместо IDENTITY: id выделяются заранее, и Hibernate может группировать вставки
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "media_tags_seq")
+    @SequenceGenerator(name = "media_tags_seq", sequenceName = "media_tags_seq", allocationSize = 50)
     private long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
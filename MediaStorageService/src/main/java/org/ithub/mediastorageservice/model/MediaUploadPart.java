@@ -0,0 +1,35 @@
+package org.ithub.mediastorageservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "media_upload_parts", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_upload_part_number", columnNames = {"session_id", "partNumber"})
+})
+@Data
+@NoArgsConstructor
+public class MediaUploadPart {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "session_id", nullable = false)
+    private MediaUploadSession session;
+
+    @Column(nullable = false)
+    private Integer partNumber;
+
+    @Column(nullable = false)
+    private String etag;
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(nullable = false)
+    private LocalDateTime uploadedAt = LocalDateTime.now();
+}
@@ -0,0 +1,56 @@
+package org.ithub.mediastorageservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.ithub.mediastorageservice.enums.UploadSessionStatus;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "media_upload_sessions", indexes = {
+        @Index(name = "idx_upload_session_status", columnList = "status")
+})
+@Data
+@NoArgsConstructor
+public class MediaUploadSession {
+    @Id
+    private String id;
+
+    // Идентификатор multipart-загрузки в MinIO
+    @Column(nullable = false)
+    private String uploadId;
+
+    @Column(nullable = false, unique = true)
+    private String storageKey;
+
+    @Column(nullable = false)
+    private String originalFilename;
+
+    private String contentType;
+
+    // Ожидаемый размер файла, если клиент его указал
+    private Long expectedSize;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private UploadSessionStatus status = UploadSessionStatus.ACTIVE;
+
+    // Заполняется после завершения загрузки
+    private Long mediaFileId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
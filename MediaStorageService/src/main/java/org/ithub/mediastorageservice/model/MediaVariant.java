@@ -7,7 +7,12 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "media_variants")
+@Table(name = "media_variants", indexes = {
+        @Index(name = "idx_variant_storage_key", columnList = "storageKey")
+}, uniqueConstraints = {
+        // Один вариант с каждым именем на файл: повторная обработка сначала удаляет прежние
+        @UniqueConstraint(name = "uk_media_variant_media_name", columnNames = {"media_id", "variantName"})
+})
 @Data
 @NoArgsConstructor
 public class MediaVariant {
@@ -22,7 +27,8 @@ public class MediaVariant {
     @Column(nullable = false)
     private String variantName;
 
-    @Column(nullable = false, unique = true)
+    // Варианты файлов с одинаковым содержимым ссылаются на один объект
+    @Column(nullable = false)
     private String storageKey;
 
     private Integer width;
@@ -30,6 +36,9 @@ public class MediaVariant {
 
     private Long size;
 
+    // Для записей, созданных до появления форматов, - image/jpeg
+    private String contentType;
+
     @Column(nullable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
 }
@@ -1,12 +1,20 @@
 package org.ithub.mediastorageservice.repository;
 
+import jakarta.persistence.LockModeType;
 import org.ithub.mediastorageservice.model.MediaAlbum;
 import org.ithub.mediastorageservice.model.MediaFile;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,4 +25,64 @@ public interface MediaAlbumRepository extends JpaRepository<MediaAlbum, Long> {
     Optional<MediaAlbum> findByNameAndCreatedBy(String name, String createdBy);
     List<MediaAlbum> findByMediaFilesContaining(MediaFile mediaFile);
     Page<MediaAlbum> findByIsPublic(Boolean isPublic, Pageable pageable);
+
+    // Постраничный просмотр по курсору: продолжение с позиции (createdAt, id) по индексу, без OFFSET
+    @Query("select a from MediaAlbum a where (a.createdAt, a.id) < (:createdAt, :id) order by a.createdAt desc, a.id desc")
+    List<MediaAlbum> findPageBefore(@Param("createdAt") LocalDateTime createdAt, @Param("id") long id, Limit limit);
+
+    @Query("select a from MediaAlbum a where a.isPublic = :isPublic and (a.createdAt, a.id) < (:createdAt, :id) " +
+            "order by a.createdAt desc, a.id desc")
+    List<MediaAlbum> findByIsPublicPageBefore(@Param("isPublic") Boolean isPublic,
+                                              @Param("createdAt") LocalDateTime createdAt, @Param("id") long id, Limit limit);
+
+    long countByIsPublic(Boolean isPublic);
+
+    // Блокировка строк альбомов на время пересчета сводки; порядок по id исключает взаимную блокировку
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from MediaAlbum a where a.id in :ids order by a.id")
+    List<MediaAlbum> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    // Работа с таблицей media_album_items напрямую, без загрузки коллекции альбома
+    @Query(value = "select count(*) from media_album_items where album_id = :albumId", nativeQuery = true)
+    long countItems(@Param("albumId") Long albumId);
+
+    @Query(value = "select i.media_id from media_album_items i join media_files f on f.id = i.media_id " +
+            "where i.album_id = :albumId order by f.created_at desc, f.id desc limit :limit",
+            nativeQuery = true)
+    List<Long> findItemMediaIds(@Param("albumId") Long albumId, @Param("limit") int limit);
+
+    @Query(value = "select album_id from media_album_items where media_id = :mediaId", nativeQuery = true)
+    List<Long> findAlbumIdsByMediaId(@Param("mediaId") Long mediaId);
+
+    @Modifying
+    @Query(value = "insert into media_album_items (album_id, media_id) values (:albumId, :mediaId) on conflict do nothing",
+            nativeQuery = true)
+    int insertItem(@Param("albumId") Long albumId, @Param("mediaId") Long mediaId);
+
+    @Modifying
+    @Query(value = "delete from media_album_items where album_id = :albumId and media_id = :mediaId", nativeQuery = true)
+    int deleteItem(@Param("albumId") Long albumId, @Param("mediaId") Long mediaId);
+
+    @Modifying
+    @Query(value = "delete from media_album_items where media_id = :mediaId", nativeQuery = true)
+    int deleteItemsByMediaId(@Param("mediaId") Long mediaId);
+
+    // Пакетные операции над таблицей media_album_items
+    @Query(value = "select distinct album_id from media_album_items where media_id in (:mediaIds)", nativeQuery = true)
+    List<Long> findAlbumIdsByMediaIds(@Param("mediaIds") Collection<Long> mediaIds);
+
+    @Modifying
+    @Query(value = "insert into media_album_items (album_id, media_id) " +
+            "select :albumId, f.id from media_files f where f.id in (:mediaIds) on conflict do nothing",
+            nativeQuery = true)
+    int insertItems(@Param("albumId") Long albumId, @Param("mediaIds") Collection<Long> mediaIds);
+
+    @Modifying
+    @Query(value = "delete from media_album_items where album_id = :albumId and media_id in (:mediaIds)",
+            nativeQuery = true)
+    int deleteItems(@Param("albumId") Long albumId, @Param("mediaIds") Collection<Long> mediaIds);
+
+    @Modifying
+    @Query(value = "delete from media_album_items where media_id in (:mediaIds)", nativeQuery = true)
+    int deleteItemsByMediaIds(@Param("mediaIds") Collection<Long> mediaIds);
 }
@@ -0,0 +1,41 @@
+package org.ithub.mediastorageservice.repository;
+
+import org.ithub.mediastorageservice.model.MediaBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface MediaBlobRepository extends JpaRepository<MediaBlob, String> {
+    // Новый объект получает одну ссылку, повторная запись того же ключа добавляет ссылку
+    @Modifying
+    @Query(value = "insert into media_blobs (storage_key, content_hash, ref_count, created_at) " +
+            "values (:storageKey, :contentHash, 1, now()) " +
+            "on conflict (storage_key) do update set ref_count = media_blobs.ref_count + 1",
+            nativeQuery = true)
+    int register(@Param("storageKey") String storageKey, @Param("contentHash") String contentHash);
+
+    // Ссылку можно взять только на живой объект; count - число ссылок на каждый ключ
+    @Modifying
+    @Query("update MediaBlob b set b.refCount = b.refCount + :count where b.storageKey in :storageKeys and b.refCount > 0")
+    int acquire(@Param("storageKeys") Collection<String> storageKeys, @Param("count") int count);
+
+    @Modifying
+    @Query("update MediaBlob b set b.refCount = b.refCount - :count where b.storageKey in :storageKeys")
+    int release(@Param("storageKeys") Collection<String> storageKeys, @Param("count") int count);
+
+    @Query("select b.storageKey from MediaBlob b where b.storageKey in :storageKeys")
+    List<String> findExistingKeys(@Param("storageKeys") Collection<String> storageKeys);
+
+    @Query("select b.storageKey from MediaBlob b where b.storageKey in :storageKeys and b.refCount <= 0")
+    List<String> findUnreferencedKeys(@Param("storageKeys") Collection<String> storageKeys);
+
+    @Modifying
+    @Query("delete from MediaBlob b where b.storageKey in :storageKeys and b.refCount <= 0")
+    int deleteUnreferenced(@Param("storageKeys") Collection<String> storageKeys);
+}
@@ -1,20 +1,85 @@
 package org.ithub.mediastorageservice.repository;
 
+import jakarta.persistence.LockModeType;
 import org.ithub.mediastorageservice.enums.MediaStatus;
 import org.ithub.mediastorageservice.model.MediaFile;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.ithub.mediastorageservice.enums.MediaType;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 @Repository
 public interface MediaFileRepository extends JpaRepository<MediaFile, Long> {
     Page<MediaFile> findByMediaType(MediaType mediaType, Pageable pageable);
     List<MediaFile> findByStatus(MediaStatus status);
-    Page<MediaFile> findByTagsIn(Set<String> tags, Pageable pageable);
-    Page<MediaFile> findByTagsInAndMediaType(Set<String> tags, MediaType mediaType, Pageable pageable);
+
+    // Теги хранятся в MediaTag (media_tags.name): фильтр через exists не размножает файл
+    // с несколькими подходящими тегами и не требует distinct
+    @Query(value = "select f from MediaFile f where exists (select 1 from MediaTag t where t.mediaFile = f and t.name in :tags)",
+            countQuery = "select count(f) from MediaFile f where exists (select 1 from MediaTag t where t.mediaFile = f and t.name in :tags)")
+    Page<MediaFile> findByTagsIn(@Param("tags") Set<String> tags, Pageable pageable);
+
+    @Query(value = "select f from MediaFile f where exists (select 1 from MediaTag t where t.mediaFile = f and t.name in :tags) " +
+            "and f.mediaType = :mediaType",
+            countQuery = "select count(f) from MediaFile f where exists (select 1 from MediaTag t where t.mediaFile = f and t.name in :tags) " +
+                    "and f.mediaType = :mediaType")
+    Page<MediaFile> findByTagsInAndMediaType(@Param("tags") Set<String> tags, @Param("mediaType") MediaType mediaType,
+                                             Pageable pageable);
+
+    // Файлы альбома: пагинация и сортировка выполняются в БД по таблице media_album_items
+    @Query(value = "select f from MediaFile f where f.id in " +
+            "(select m.id from MediaAlbum a join a.mediaFiles m where a.id = :albumId)",
+            countQuery = "select count(m) from MediaAlbum a join a.mediaFiles m where a.id = :albumId")
+    Page<MediaFile> findByAlbumId(@Param("albumId") Long albumId, Pageable pageable);
+
+    // Постраничный просмотр по курсору: продолжение с позиции (createdAt, id) по индексу, без OFFSET
+    @Query("select f from MediaFile f where (f.createdAt, f.id) < (:createdAt, :id) order by f.createdAt desc, f.id desc")
+    List<MediaFile> findPageBefore(@Param("createdAt") LocalDateTime createdAt, @Param("id") long id, Limit limit);
+
+    @Query("select f from MediaFile f where f.mediaType = :mediaType and (f.createdAt, f.id) < (:createdAt, :id) " +
+            "order by f.createdAt desc, f.id desc")
+    List<MediaFile> findByMediaTypePageBefore(@Param("mediaType") MediaType mediaType,
+                                              @Param("createdAt") LocalDateTime createdAt, @Param("id") long id, Limit limit);
+
+    @Query("select f from MediaFile f where exists (select 1 from MediaTag t where t.mediaFile = f and t.name in :tags) " +
+            "and (f.createdAt, f.id) < (:createdAt, :id) order by f.createdAt desc, f.id desc")
+    List<MediaFile> findByTagsPageBefore(@Param("tags") Set<String> tags,
+                                         @Param("createdAt") LocalDateTime createdAt, @Param("id") long id, Limit limit);
+
+    @Query("select f from MediaFile f where exists (select 1 from MediaTag t where t.mediaFile = f and t.name in :tags) " +
+            "and f.mediaType = :mediaType and (f.createdAt, f.id) < (:createdAt, :id) order by f.createdAt desc, f.id desc")
+    List<MediaFile> findByTagsAndMediaTypePageBefore(@Param("tags") Set<String> tags, @Param("mediaType") MediaType mediaType,
+                                                     @Param("createdAt") LocalDateTime createdAt, @Param("id") long id, Limit limit);
+
+    long countByMediaType(MediaType mediaType);
+
+    @Query("select count(f) from MediaFile f where exists (select 1 from MediaTag t where t.mediaFile = f and t.name in :tags)")
+    long countByTags(@Param("tags") Set<String> tags);
+
+    @Query("select count(f) from MediaFile f where exists (select 1 from MediaTag t where t.mediaFile = f and t.name in :tags) " +
+            "and f.mediaType = :mediaType")
+    long countByTagsAndMediaType(@Param("tags") Set<String> tags, @Param("mediaType") MediaType mediaType);
+
+    List<MediaFile> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+    Optional<MediaFile> findFirstByContentHashAndStatusOrderByIdAsc(String contentHash, MediaStatus status);
+
+    @Query("select f.id from MediaFile f where f.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    // Блокировка строк файлов перед удалением: вставка варианта или элемента альбома (проверка внешнего ключа)
+    // ждет фиксации удаления; порядок по id исключает взаимную блокировку
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from MediaFile f where f.id in :ids order by f.id")
+    List<MediaFile> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
 }
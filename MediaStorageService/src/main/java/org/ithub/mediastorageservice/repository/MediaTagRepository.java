@@ -2,6 +2,9 @@ package org.ithub.mediastorageservice.repository;
 
 import org.ithub.mediastorageservice.model.MediaTag;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
@@ -13,4 +16,28 @@ public interface MediaTagRepository extends JpaRepository<MediaTag, Long> {
     List<MediaTag> findByName(String name);
     void deleteByMediaFileId(Long mediaFileId);
     List<MediaTag> findByMediaFileIdAndNameIn(Long mediaFileId, Collection<String> names);
+    List<MediaTag> findByMediaFileIdIn(Collection<Long> mediaFileIds);
+
+    @Modifying
+    @Query("delete from MediaTag t where t.mediaFile.id in :mediaFileIds")
+    int deleteByMediaFileIdIn(@Param("mediaFileIds") Collection<Long> mediaFileIds);
+
+    @Modifying
+    @Query("delete from MediaTag t where t.mediaFile.id in :mediaFileIds and t.name in :names")
+    int deleteByMediaFileIdInAndNameIn(@Param("mediaFileIds") Collection<Long> mediaFileIds,
+                                       @Param("names") Collection<String> names);
+
+    // Теги для порции файлов одним INSERT ... SELECT; уже существующие пары (файл, тег) пропускаются.
+    // Несуществующие id файлов отфильтровываются соединением с media_files.
+    // nextval вызывается на каждую строку (и для пропущенных по конфликту) и из-за шага 50 тратит
+    // целый блок id на строку: id растут в 50 раз быстрее числа тегов, для bigint это допустимо.
+    // Схема: db/migration/002_media_tags_unique_name.sql
+    @Modifying
+    @Query(value = "insert into media_tags (id, media_id, name, type, created_at) " +
+            "select nextval('media_tags_seq'), f.id, t.name, :type, now() " +
+            "from media_files f cross join unnest(array[:names]) as t(name) " +
+            "where f.id in (:mediaFileIds) on conflict (media_id, name) do nothing",
+            nativeQuery = true)
+    int insertTags(@Param("mediaFileIds") Collection<Long> mediaFileIds, @Param("names") Collection<String> names,
+                   @Param("type") String type);
 }
@@ -0,0 +1,32 @@
+package org.ithub.mediastorageservice.repository;
+
+import org.ithub.mediastorageservice.model.MediaUploadPart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface MediaUploadPartRepository extends JpaRepository<MediaUploadPart, Long> {
+    List<MediaUploadPart> findBySessionIdOrderByPartNumber(String sessionId);
+
+    // Повторная загрузка части (ретрай клиента) заменяет запись одним запросом, без гонки find-then-insert
+    @Modifying
+    @Transactional
+    @Query(value = "insert into media_upload_parts (session_id, part_number, etag, size, uploaded_at) " +
+            "values (:sessionId, :partNumber, :etag, :size, now()) " +
+            "on conflict (session_id, part_number) do update " +
+            "set etag = excluded.etag, size = excluded.size, uploaded_at = excluded.uploaded_at",
+            nativeQuery = true)
+    int upsert(@Param("sessionId") String sessionId, @Param("partNumber") int partNumber,
+               @Param("etag") String etag, @Param("size") long size);
+
+    @Modifying
+    @Transactional
+    @Query("delete from MediaUploadPart p where p.session.id = :sessionId")
+    int deleteBySessionId(@Param("sessionId") String sessionId);
+}
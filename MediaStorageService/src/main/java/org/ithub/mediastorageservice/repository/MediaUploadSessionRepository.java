@@ -0,0 +1,31 @@
+package org.ithub.mediastorageservice.repository;
+
+import org.ithub.mediastorageservice.enums.UploadSessionStatus;
+import org.ithub.mediastorageservice.model.MediaUploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface MediaUploadSessionRepository extends JpaRepository<MediaUploadSession, String> {
+
+    // Смена статуса только из ожидаемого: из параллельных запросов переход выполнит один
+    @Modifying
+    @Transactional
+    @Query("update MediaUploadSession s set s.status = :to, s.updatedAt = :now where s.id = :id and s.status = :from")
+    int transition(@Param("id") String id, @Param("from") UploadSessionStatus from,
+                   @Param("to") UploadSessionStatus to, @Param("now") LocalDateTime now);
+
+    // Сессии без активности с момента cutoff: ни изменений сессии, ни загруженных частей
+    @Query("select s from MediaUploadSession s where s.status = :status " +
+            "and coalesce(s.updatedAt, s.createdAt) < :cutoff " +
+            "and not exists (select 1 from MediaUploadPart p where p.session = s and p.uploadedAt >= :cutoff)")
+    List<MediaUploadSession> findInactiveSince(@Param("status") UploadSessionStatus status,
+                                               @Param("cutoff") LocalDateTime cutoff);
+}
@@ -2,8 +2,12 @@ package org.ithub.mediastorageservice.repository;
 
 import org.ithub.mediastorageservice.model.MediaVariant;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,4 +16,9 @@ public interface MediaVariantRepository extends JpaRepository<MediaVariant, Long
     List<MediaVariant> findByMediaFileId(Long mediaFileId);
     Optional<MediaVariant> findByMediaFileIdAndVariantName(Long mediaFileId, String variantName);
     void deleteByMediaFileId(Long mediaFileId);
+    List<MediaVariant> findByMediaFileIdIn(Collection<Long> mediaFileIds);
+
+    @Modifying
+    @Query("delete from MediaVariant v where v.mediaFile.id in :mediaFileIds")
+    int deleteByMediaFileIdIn(@Param("mediaFileIds") Collection<Long> mediaFileIds);
 }
\ No newline at end of file
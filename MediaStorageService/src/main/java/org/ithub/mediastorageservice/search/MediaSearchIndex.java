@@ -0,0 +1,625 @@
+package org.ithub.mediastorageservice.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.dto.MediaSearchRequestDTO;
+import org.ithub.mediastorageservice.enums.MediaStatus;
+import org.ithub.mediastorageservice.enums.MediaType;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Поисковый индекс медиа-файлов в памяти процесса.
+ * Инвертированные списки по токенам имени файла и автору, сжатые битовые карты по тегам
+ * (имена тегов переводятся в id через словарь), типу и статусу, отсортированные индексы
+ * по дате создания и размеру. Обновляется при каждом изменении,
+ * при запуске перестраивается из БД (см. MediaSearchService)
+ */
+@Slf4j
+@Component
+public class MediaSearchIndex {
+    // До этого числа кандидатов фильтр по диапазону проверяет значения документов напрямую
+    private static final int RANGE_SCAN_THRESHOLD = 100_000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Integer, IndexedMedia> documents = new HashMap<>();
+    private final RoaringBitmap allDocs = new RoaringBitmap();
+
+    // Токены хранятся отсортированными для поиска по префиксу
+    private final TreeMap<String, PostingList> filenameTokens = new TreeMap<>();
+    private final Map<String, PostingList> uploaders = new HashMap<>();
+    private final TreeMap<Long, PostingList> createdAtIndex = new TreeMap<>();
+    private final TreeMap<Long, PostingList> sizeIndex = new TreeMap<>();
+
+    // Битовые карты по id тега, типу и статусу: по ним считаются выражения и фасеты
+    private final TagDictionary tagDictionary = new TagDictionary();
+    private final Map<Integer, RoaringBitmap> tags = new HashMap<>();
+    private final Map<MediaType, RoaringBitmap> mediaTypes = new EnumMap<>(MediaType.class);
+    private final Map<MediaStatus, RoaringBitmap> statuses = new EnumMap<>(MediaStatus.class);
+
+    // Удаления, пришедшие во время перестроения: старая выборка из БД не должна их вернуть
+    private Set<Integer> removedDuringRebuild;
+    // Документы, измененные во время перестроения: выборка могла прочитать их до изменения,
+    // поэтому после последней порции они перечитываются из БД
+    private Set<Long> changedDuringRebuild;
+
+    /**
+     * Добавление или замена документа
+     */
+    public void index(MediaFile mediaFile, Collection<String> fileTags) {
+        lock.writeLock().lock();
+        try {
+            markChanged(mediaFile.getId());
+            put(toDocument(mediaFile, fileTags));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавление документов пачкой при перестроении индекса. Уже проиндексированные документы
+     * не заменяются: они добавлены или изменены после того, как порция была прочитана
+     */
+    public void indexBatch(List<MediaFile> mediaFiles, Map<Long, Set<String>> tagsByFile) {
+        lock.writeLock().lock();
+        try {
+            for (MediaFile mediaFile : mediaFiles) {
+                int id = toDocId(mediaFile.getId());
+                if (!isRemovedDuringRebuild(id) && !documents.containsKey(id)) {
+                    put(toDocument(mediaFile, tagsByFile.getOrDefault(mediaFile.getId(), Set.of())));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Замена документов, перечитанных из БД после изменения во время перестроения
+     */
+    public void reindexBatch(List<MediaFile> mediaFiles, Map<Long, Set<String>> tagsByFile) {
+        lock.writeLock().lock();
+        try {
+            for (MediaFile mediaFile : mediaFiles) {
+                if (!isRemovedDuringRebuild(toDocId(mediaFile.getId()))) {
+                    put(toDocument(mediaFile, tagsByFile.getOrDefault(mediaFile.getId(), Set.of())));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Id документов, измененных во время перестроения с прошлого вызова.
+     * Изменения, пришедшие после вызова, попадут в следующий
+     */
+    public Set<Long> drainChangedDuringRebuild() {
+        lock.writeLock().lock();
+        try {
+            if (changedDuringRebuild == null || changedDuringRebuild.isEmpty()) {
+                return Set.of();
+            }
+            Set<Long> changed = changedDuringRebuild;
+            changedDuringRebuild = new HashSet<>();
+            return changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addTags(Long mediaId, Collection<String> addedTags) {
+        updateTags(mediaId, addedTags, true);
+    }
+
+    public void removeTags(Long mediaId, Collection<String> removedTags) {
+        updateTags(mediaId, removedTags, false);
+    }
+
+    /**
+     * Смена статуса файла (окончание обработки вариантов или ошибка)
+     */
+    public void updateStatus(Long mediaId, MediaStatus status) {
+        lock.writeLock().lock();
+        try {
+            markChanged(mediaId);
+            IndexedMedia document = documents.get(toDocId(mediaId));
+            if (document == null || document.status() == status) {
+                return;
+            }
+            unlink(statuses, document.status(), document.id());
+            link(statuses, status, document.id());
+            documents.put(document.id(), document.withStatus(status));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Collection<Long> mediaIds) {
+        lock.writeLock().lock();
+        try {
+            for (Long mediaId : mediaIds) {
+                int id = toDocId(mediaId);
+                if (removedDuringRebuild != null) {
+                    removedDuringRebuild.add(id);
+                }
+                IndexedMedia document = documents.remove(id);
+                if (document != null) {
+                    unlink(document);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void beginRebuild() {
+        lock.writeLock().lock();
+        try {
+            removedDuringRebuild = new HashSet<>();
+            changedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void endRebuild() {
+        lock.writeLock().lock();
+        try {
+            removedDuringRebuild = null;
+            changedDuringRebuild = null;
+            // После массовой загрузки плотные участки карт переводятся в run-контейнеры
+            allDocs.runOptimize();
+            tags.values().forEach(RoaringBitmap::runOptimize);
+            mediaTypes.values().forEach(RoaringBitmap::runOptimize);
+            statuses.values().forEach(RoaringBitmap::runOptimize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Поиск с комбинированными фильтрами. Все заданные фильтры объединяются через И,
+     * внутри фильтра по тегам - ИЛИ. Результаты ранжируются по числу точных совпадений
+     * токенов имени и тегов, при равенстве - сначала новые
+     */
+    public SearchHits search(MediaSearchRequestDTO request, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap candidates = allDocs.clone();
+            List<RoaringBitmap> scoring = new ArrayList<>();
+
+            // Имя файла: каждый токен запроса должен совпасть с токеном имени или быть его префиксом
+            for (String token : tokenize(request.getFilename())) {
+                RoaringBitmap matches = new RoaringBitmap();
+                filenameTokens.subMap(token, true, token + Character.MAX_VALUE, true)
+                        .values()
+                        .forEach(postings -> postings.orInto(matches));
+                candidates.and(matches);
+
+                PostingList exact = filenameTokens.get(token);
+                if (exact != null) {
+                    scoring.add(exact.toBitmap());
+                }
+            }
+
+            if (request.getTags() != null && !request.getTags().isEmpty()) {
+                RoaringBitmap matches = new RoaringBitmap();
+                for (String tag : request.getTags()) {
+                    RoaringBitmap bitmap = tagBitmap(tag);
+                    if (!bitmap.isEmpty()) {
+                        matches.or(bitmap);
+                        scoring.add(bitmap);
+                    }
+                }
+                candidates.and(matches);
+            }
+
+            if (request.getUploadedBy() != null && !request.getUploadedBy().isBlank()) {
+                PostingList postings = uploaders.get(normalize(request.getUploadedBy()));
+                candidates.and(postings != null ? postings.toBitmap() : new RoaringBitmap());
+            }
+
+            if (request.getMediaType() != null && !request.getMediaType().isBlank()) {
+                candidates.and(bitmapOrEmpty(mediaTypes.get(parseEnum(MediaType.class, request.getMediaType()))));
+            }
+
+            // Диапазоны применяются последними: если кандидатов уже мало, дешевле проверить их значения,
+            // чем собирать битовую карту по всему диапазону индекса
+            Long fromDate = toEpochMilli(request.getFromDate());
+            Long toDate = toEpochMilli(request.getToDate());
+            if (fromDate != null || toDate != null) {
+                candidates = filterRange(candidates, createdAtIndex, IndexedMedia::createdAt, fromDate, toDate);
+            }
+
+            if (request.getMinSize() != null || request.getMaxSize() != null) {
+                candidates = filterRange(candidates, sizeIndex, IndexedMedia::size, request.getMinSize(), request.getMaxSize());
+            }
+
+            return rank(candidates, scoring, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Поиск по логическому выражению над тегами (AND, OR, NOT, скобки) с необязательными
+     * фильтрами по типу и статусу. Результаты сортируются от новых к старым,
+     * фасеты считаются по всему результату, а не только по странице
+     */
+    public TagQueryHits searchByTags(String expression, String mediaType, String status,
+                                     int offset, int limit, int facetLimit) {
+        TagExpression parsed = TagExpression.parse(expression);
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap result = parsed.evaluate(this::tagBitmap, allDocs);
+            if (mediaType != null && !mediaType.isBlank()) {
+                result = RoaringBitmap.and(result, bitmapOrEmpty(mediaTypes.get(parseEnum(MediaType.class, mediaType))));
+            }
+            if (status != null && !status.isBlank()) {
+                result = RoaringBitmap.and(result, bitmapOrEmpty(statuses.get(parseEnum(MediaStatus.class, status))));
+            }
+
+            return new TagQueryHits(
+                    newestFirst(result, offset, limit),
+                    result.getLongCardinality(),
+                    tagFacets(result, facetLimit),
+                    enumFacets(result, mediaTypes),
+                    enumFacets(result, statuses));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ранжирование: сортировка подсчетом по числу совпадений, внутри одинакового счета
+     * по убыванию id (порядок создания)
+     */
+    private SearchHits rank(RoaringBitmap candidates, List<RoaringBitmap> scoring, int offset, int limit) {
+        long total = candidates.getLongCardinality();
+        if (offset < 0 || offset >= total) {
+            return new SearchHits(List.of(), total);
+        }
+        if (scoring.isEmpty()) {
+            return new SearchHits(newestFirst(candidates, offset, limit), total);
+        }
+
+        // Из одной корзины никогда не понадобится больше offset + limit id
+        long bucketCapacity = Math.min((long) offset + limit, total);
+        List<List<Integer>> buckets = new ArrayList<>();
+        for (int i = 0; i <= scoring.size(); i++) {
+            buckets.add(new ArrayList<>());
+        }
+        IntIterator iterator = candidates.getReverseIntIterator();
+        while (iterator.hasNext()) {
+            int id = iterator.next();
+            int score = 0;
+            for (RoaringBitmap scoringSet : scoring) {
+                if (scoringSet.contains(id)) {
+                    score++;
+                }
+            }
+            List<Integer> bucket = buckets.get(score);
+            if (bucket.size() < bucketCapacity) {
+                bucket.add(id);
+            }
+        }
+
+        List<Long> ids = new ArrayList<>((int) Math.min(limit, total));
+        int skipped = 0;
+        for (int score = buckets.size() - 1; score >= 0 && ids.size() < limit; score--) {
+            for (Integer id : buckets.get(score)) {
+                if (ids.size() >= limit) {
+                    break;
+                }
+                if (skipped++ >= offset) {
+                    ids.add((long) id);
+                }
+            }
+        }
+        return new SearchHits(ids, total);
+    }
+
+    /**
+     * Страница id от больших к меньшим. Начало страницы находится через select,
+     * пропущенные id не перебираются
+     */
+    private static List<Long> newestFirst(RoaringBitmap bitmap, int offset, int limit) {
+        long total = bitmap.getLongCardinality();
+        if (offset < 0 || offset >= total || limit <= 0) {
+            return List.of();
+        }
+
+        // В порядке возрастания страница занимает позиции [total - offset - limit, total - offset)
+        long lastRank = total - 1 - offset;
+        long firstRank = Math.max(0, lastRank - limit + 1);
+
+        List<Long> ids = new ArrayList<>((int) Math.min(limit, total));
+        PeekableIntIterator iterator = bitmap.getIntIterator();
+        iterator.advanceIfNeeded(bitmap.select((int) firstRank));
+        for (long rank = firstRank; rank <= lastRank && iterator.hasNext(); rank++) {
+            ids.add((long) iterator.next());
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    /**
+     * Самые частые теги в результате: размер пересечения считается без построения карты
+     */
+    private Map<String, Long> tagFacets(RoaringBitmap result, int facetLimit) {
+        Map<String, Long> facets = new LinkedHashMap<>();
+        if (facetLimit <= 0 || result.isEmpty()) {
+            return facets;
+        }
+
+        tags.entrySet().stream()
+                .map(entry -> Map.entry(tagDictionary.name(entry.getKey()), (long) RoaringBitmap.andCardinality(result, entry.getValue())))
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(facetLimit)
+                .forEach(entry -> facets.put(entry.getKey(), entry.getValue()));
+        return facets;
+    }
+
+    private static <E extends Enum<E>> Map<String, Long> enumFacets(RoaringBitmap result, Map<E, RoaringBitmap> index) {
+        Map<String, Long> facets = new LinkedHashMap<>();
+        index.forEach((value, bitmap) -> {
+            long count = RoaringBitmap.andCardinality(result, bitmap);
+            if (count > 0) {
+                facets.put(value.name(), count);
+            }
+        });
+        return facets;
+    }
+
+    private void updateTags(Long mediaId, Collection<String> changedTags, boolean add) {
+        if (changedTags == null || changedTags.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            markChanged(mediaId);
+            // Документ еще не проиндексирован: теги попадут в индекс вместе с ним
+            IndexedMedia document = documents.get(toDocId(mediaId));
+            if (document == null) {
+                return;
+            }
+            for (String tag : changedTags) {
+                int tagId = tagDictionary.intern(normalize(tag));
+                if (add && document.tagIds().add(tagId)) {
+                    link(tags, tagId, document.id());
+                } else if (!add && document.tagIds().remove(tagId)) {
+                    unlink(tags, tagId, document.id());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Вызывать под блокировкой записи
+     */
+    private void markChanged(Long mediaId) {
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.add(mediaId);
+        }
+    }
+
+    private boolean isRemovedDuringRebuild(int id) {
+        return removedDuringRebuild != null && removedDuringRebuild.contains(id);
+    }
+
+    private void put(IndexedMedia document) {
+        IndexedMedia previous = documents.put(document.id(), document);
+        if (previous != null) {
+            unlink(previous);
+        }
+
+        allDocs.add(document.id());
+        document.filenameTokens().forEach(token -> linkPosting(filenameTokens, token, document.id()));
+        document.tagIds().forEach(tagId -> link(tags, tagId, document.id()));
+        if (document.uploadedBy() != null) {
+            linkPosting(uploaders, document.uploadedBy(), document.id());
+        }
+        link(mediaTypes, document.mediaType(), document.id());
+        link(statuses, document.status(), document.id());
+        linkPosting(createdAtIndex, document.createdAt(), document.id());
+        linkPosting(sizeIndex, document.size(), document.id());
+    }
+
+    private void unlink(IndexedMedia document) {
+        allDocs.remove(document.id());
+        document.filenameTokens().forEach(token -> unlinkPosting(filenameTokens, token, document.id()));
+        document.tagIds().forEach(tagId -> unlink(tags, tagId, document.id()));
+        if (document.uploadedBy() != null) {
+            unlinkPosting(uploaders, document.uploadedBy(), document.id());
+        }
+        unlink(mediaTypes, document.mediaType(), document.id());
+        unlink(statuses, document.status(), document.id());
+        unlinkPosting(createdAtIndex, document.createdAt(), document.id());
+        unlinkPosting(sizeIndex, document.size(), document.id());
+    }
+
+    private static <T> void link(Map<T, RoaringBitmap> index, T term, int id) {
+        if (term != null) {
+            index.computeIfAbsent(term, key -> new RoaringBitmap()).add(id);
+        }
+    }
+
+    private static <T> void unlink(Map<T, RoaringBitmap> index, T term, int id) {
+        RoaringBitmap bitmap = term != null ? index.get(term) : null;
+        if (bitmap != null) {
+            bitmap.remove(id);
+            if (bitmap.isEmpty()) {
+                index.remove(term);
+            }
+        }
+    }
+
+    private static <T> void linkPosting(Map<T, PostingList> index, T term, int id) {
+        index.computeIfAbsent(term, key -> new PostingList()).add(id);
+    }
+
+    private static <T> void unlinkPosting(Map<T, PostingList> index, T term, int id) {
+        PostingList postings = index.get(term);
+        if (postings != null) {
+            postings.remove(id);
+            if (postings.isEmpty()) {
+                index.remove(term);
+            }
+        }
+    }
+
+    private RoaringBitmap tagBitmap(String tag) {
+        int tagId = tagDictionary.lookup(normalize(tag));
+        return tagId >= 0 ? bitmapOrEmpty(tags.get(tagId)) : new RoaringBitmap();
+    }
+
+    private RoaringBitmap filterRange(RoaringBitmap candidates, NavigableMap<Long, PostingList> index,
+                                      ToLongFunction<IndexedMedia> value, Long from, Long to) {
+        if (candidates.getLongCardinality() > RANGE_SCAN_THRESHOLD) {
+            return RoaringBitmap.and(candidates, range(index, from, to));
+        }
+
+        RoaringBitmap filtered = new RoaringBitmap();
+        IntIterator iterator = candidates.getIntIterator();
+        while (iterator.hasNext()) {
+            int id = iterator.next();
+            long docValue = value.applyAsLong(documents.get(id));
+            if ((from == null || docValue >= from) && (to == null || docValue <= to)) {
+                filtered.add(id);
+            }
+        }
+        return filtered;
+    }
+
+    private static RoaringBitmap range(NavigableMap<Long, PostingList> index, Long from, Long to) {
+        NavigableMap<Long, PostingList> range;
+        if (from != null && to != null) {
+            range = index.subMap(from, true, to, true);
+        } else if (from != null) {
+            range = index.tailMap(from, true);
+        } else {
+            range = index.headMap(to, true);
+        }
+
+        RoaringBitmap matches = new RoaringBitmap();
+        range.values().forEach(postings -> postings.orInto(matches));
+        return matches;
+    }
+
+    private static RoaringBitmap bitmapOrEmpty(RoaringBitmap bitmap) {
+        return bitmap != null ? bitmap : new RoaringBitmap();
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Вызывать под блокировкой записи: теги документа добавляются в словарь
+     */
+    private IndexedMedia toDocument(MediaFile mediaFile, Collection<String> fileTags) {
+        Set<Integer> tagIds = new HashSet<>();
+        if (fileTags != null) {
+            fileTags.forEach(tag -> tagIds.add(tagDictionary.intern(normalize(tag))));
+        }
+
+        return new IndexedMedia(
+                toDocId(mediaFile.getId()),
+                tokenize(mediaFile.getOriginalFilename()),
+                tagIds,
+                mediaFile.getUploadedBy() != null ? normalize(mediaFile.getUploadedBy()) : null,
+                mediaFile.getMediaType(),
+                mediaFile.getStatus(),
+                mediaFile.getCreatedAt() != null ? toEpochMilli(mediaFile.getCreatedAt()) : 0L,
+                mediaFile.getSize() != null ? mediaFile.getSize() : 0L);
+    }
+
+    /**
+     * Разбиение имени файла на токены: буквы и цифры в нижнем регистре,
+     * расширение становится отдельным токеном
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Long toEpochMilli(LocalDateTime dateTime) {
+        return dateTime != null ? dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : null;
+    }
+
+    private static int toDocId(long mediaId) {
+        // Битовые карты индексируются int, для id больше 2^31 индекс нужно перевести на другой ключ
+        return Math.toIntExact(mediaId);
+    }
+
+    /**
+     * Результат поиска: id страницы в порядке ранжирования и общее число совпадений
+     */
+    public record SearchHits(List<Long> ids, long total) {
+    }
+
+    /**
+     * Результат поиска по тегам: страница id, общее число совпадений и фасеты по результату
+     */
+    public record TagQueryHits(List<Long> ids, long total, Map<String, Long> tagFacets,
+                               Map<String, Long> mediaTypeFacets, Map<String, Long> statusFacets) {
+    }
+
+    private record IndexedMedia(int id, Set<String> filenameTokens, Set<Integer> tagIds, String uploadedBy,
+                                MediaType mediaType, MediaStatus status, Long createdAt, Long size) {
+
+        IndexedMedia withStatus(MediaStatus newStatus) {
+            return new IndexedMedia(id, filenameTokens, tagIds, uploadedBy, mediaType, newStatus, createdAt, size);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.ithub.mediastorageservice.search;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.dto.MediaFileDTO;
+import org.ithub.mediastorageservice.dto.MediaSearchRequestDTO;
+import org.ithub.mediastorageservice.dto.MediaTagQueryDTO;
+import org.ithub.mediastorageservice.dto.MediaTagQueryResultDTO;
+import org.ithub.mediastorageservice.dto.PaginatedResponseDTO;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.repository.MediaFileRepository;
+import org.ithub.mediastorageservice.service.MediaFileService;
+import org.ithub.mediastorageservice.service.MediaTagService;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Поиск медиа-файлов по индексу в памяти: индекс возвращает id страницы,
+ * сами файлы загружаются из БД одним запросом
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaSearchService {
+    private final MediaSearchIndex mediaSearchIndex;
+    private final MediaFileRepository mediaFileRepository;
+    private final MediaTagService mediaTagService;
+    private final MediaFileService mediaFileService;
+
+    // Сколько файлов читаем из БД за один запрос при перестроении индекса
+    private static final int REBUILD_BATCH_SIZE = 5000;
+    private static final int DEFAULT_FACET_LIMIT = 20;
+
+    // Наибольший размер страницы поиска
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * Поиск с фильтрами и пагинацией
+     */
+    public PaginatedResponseDTO<MediaFileDTO> search(MediaSearchRequestDTO request, int page, int size) {
+        MediaSearchIndex.SearchHits hits = mediaSearchIndex.search(request, offset(page, size), size);
+        return toPage(hits.ids(), hits.total(), page, size);
+    }
+
+    /**
+     * Поиск по логическому выражению над тегами с фасетами по тегам, типам и статусам
+     */
+    public MediaTagQueryResultDTO searchByTags(MediaTagQueryDTO query, int page, int size) {
+        int offset = offset(page, size);
+        int facetLimit = query.getFacetLimit() != null ? query.getFacetLimit() : DEFAULT_FACET_LIMIT;
+        MediaSearchIndex.TagQueryHits hits = mediaSearchIndex.searchByTags(
+                query.getExpression(), query.getMediaType(), query.getStatus(), offset, size, facetLimit);
+
+        return MediaTagQueryResultDTO.builder()
+                .results(toPage(hits.ids(), hits.total(), page, size))
+                .tagFacets(hits.tagFacets())
+                .mediaTypeFacets(hits.mediaTypeFacets())
+                .statusFacets(hits.statusFacets())
+                .build();
+    }
+
+    /**
+     * Смещение страницы. Размер ограничен, а переполнение int при большом номере страницы
+     * отклоняется, иначе смещение стало бы отрицательным
+     */
+    private static int offset(int page, int size) {
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Invalid page or size, size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        try {
+            return Math.multiplyExact(page, size);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Page number is too large");
+        }
+    }
+
+    private PaginatedResponseDTO<MediaFileDTO> toPage(List<Long> ids, long total, int page, int size) {
+        // Сохраняем порядок из индекса; файл мог быть удален между поиском и загрузкой
+        Map<Long, MediaFile> filesById = mediaFileRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(MediaFile::getId, Function.identity()));
+        List<MediaFile> mediaFiles = ids.stream()
+                .map(filesById::get)
+                .filter(Objects::nonNull)
+                .toList();
+
+        int totalPages = (int) ((total + size - 1) / size);
+        return PaginatedResponseDTO.<MediaFileDTO>builder()
+                .content(mediaFileService.convertToDTOs(mediaFiles))
+                .pageNumber(page)
+                .pageSize(size)
+                .totalElements(total)
+                .totalPages(totalPages)
+                .isFirst(page == 0)
+                .isLast(page >= totalPages - 1)
+                .build();
+    }
+
+    /**
+     * Перестроение индекса из БД порциями по id
+     */
+    public void rebuildIndex() {
+        long started = System.currentTimeMillis();
+        mediaSearchIndex.beginRebuild();
+        try {
+            long lastId = 0;
+            List<MediaFile> batch;
+            do {
+                batch = mediaFileRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(REBUILD_BATCH_SIZE));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                List<Long> ids = batch.stream().map(MediaFile::getId).toList();
+                mediaSearchIndex.indexBatch(batch, mediaTagService.getTagsNamesForFiles(ids));
+                lastId = ids.get(ids.size() - 1);
+            } while (batch.size() == REBUILD_BATCH_SIZE);
+
+            // Изменения, пришедшие во время загрузки, могли не попасть в прочитанные порции:
+            // перечитываем такие файлы, пока во время перечитывания появляются новые изменения
+            Set<Long> changed;
+            while (!(changed = mediaSearchIndex.drainChangedDuringRebuild()).isEmpty()) {
+                mediaSearchIndex.reindexBatch(mediaFileRepository.findAllById(changed),
+                        mediaTagService.getTagsNamesForFiles(changed));
+            }
+        } finally {
+            mediaSearchIndex.endRebuild();
+        }
+        log.info("Search index rebuilt: {} documents in {} ms", mediaSearchIndex.size(), System.currentTimeMillis() - started);
+    }
+}
@@ -0,0 +1,70 @@
+package org.ithub.mediastorageservice.search;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+
+/**
+ * Отсортированный список id документов для одного термина индекса.
+ * Редкие термины (большинство токенов имен файлов) занимают несколько байт,
+ * а не битовую карту на весь диапазон id
+ */
+class PostingList {
+    private int[] ids = new int[2];
+    private int size;
+
+    void add(int id) {
+        // Новые файлы получают возрастающие id, поэтому обычно это добавление в конец
+        if (size == 0 || ids[size - 1] < id) {
+            ensureCapacity();
+            ids[size++] = id;
+            return;
+        }
+
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos >= 0) {
+            return;
+        }
+        int insertAt = -pos - 1;
+        ensureCapacity();
+        System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+        ids[insertAt] = id;
+        size++;
+    }
+
+    void remove(int id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos < 0) {
+            return;
+        }
+        System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+        size--;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Добавление всех id списка в битовую карту
+     */
+    void orInto(RoaringBitmap target) {
+        target.addN(ids, 0, size);
+    }
+
+    RoaringBitmap toBitmap() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        orInto(bitmap);
+        return bitmap;
+    }
+
+    private void ensureCapacity() {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+    }
+}
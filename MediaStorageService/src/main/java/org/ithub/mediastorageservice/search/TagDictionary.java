@@ -0,0 +1,33 @@
+package org.ithub.mediastorageservice.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Словарь тегов: каждому имени тега соответствует целочисленный id.
+ * Id не переиспользуются, доступ под блокировкой индекса
+ */
+class TagDictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    int intern(String name) {
+        return ids.computeIfAbsent(name, key -> {
+            names.add(key);
+            return names.size() - 1;
+        });
+    }
+
+    /**
+     * Id тега или -1, если тег ни разу не встречался
+     */
+    int lookup(String name) {
+        return ids.getOrDefault(name, -1);
+    }
+
+    String name(int id) {
+        return names.get(id);
+    }
+}
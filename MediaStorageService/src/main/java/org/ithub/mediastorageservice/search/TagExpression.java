@@ -0,0 +1,158 @@
+package org.ithub.mediastorageservice.search;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Логическое выражение над тегами: travel AND (family OR pets) AND NOT work.
+ * Приоритет: NOT, затем AND, затем OR. Соседние теги без оператора объединяются через AND,
+ * теги с пробелами записываются в кавычках
+ */
+sealed interface TagExpression {
+
+    /**
+     * Вычисление выражения: tags возвращает битовую карту тега, universe - все документы (для NOT)
+     */
+    RoaringBitmap evaluate(Function<String, RoaringBitmap> tags, RoaringBitmap universe);
+
+    record Tag(String name) implements TagExpression {
+        @Override
+        public RoaringBitmap evaluate(Function<String, RoaringBitmap> tags, RoaringBitmap universe) {
+            return tags.apply(name);
+        }
+    }
+
+    record And(TagExpression left, TagExpression right) implements TagExpression {
+        @Override
+        public RoaringBitmap evaluate(Function<String, RoaringBitmap> tags, RoaringBitmap universe) {
+            // a AND NOT b считаем как разность, без построения дополнения
+            if (right instanceof Not not) {
+                return RoaringBitmap.andNot(left.evaluate(tags, universe), not.operand().evaluate(tags, universe));
+            }
+            return RoaringBitmap.and(left.evaluate(tags, universe), right.evaluate(tags, universe));
+        }
+    }
+
+    record Or(TagExpression left, TagExpression right) implements TagExpression {
+        @Override
+        public RoaringBitmap evaluate(Function<String, RoaringBitmap> tags, RoaringBitmap universe) {
+            return RoaringBitmap.or(left.evaluate(tags, universe), right.evaluate(tags, universe));
+        }
+    }
+
+    record Not(TagExpression operand) implements TagExpression {
+        @Override
+        public RoaringBitmap evaluate(Function<String, RoaringBitmap> tags, RoaringBitmap universe) {
+            return RoaringBitmap.andNot(universe, operand.evaluate(tags, universe));
+        }
+    }
+
+    /**
+     * Разбор выражения рекурсивным спуском
+     */
+    static TagExpression parse(String expression) {
+        Parser parser = new Parser(tokenize(expression));
+        TagExpression result = parser.parseOr();
+        if (parser.position < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected token in tag expression: " + parser.tokens.get(parser.position));
+        }
+        return result;
+    }
+
+    private static List<String> tokenize(String expression) {
+        if (expression == null || expression.isBlank()) {
+            throw new IllegalArgumentException("Tag expression must not be empty");
+        }
+
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                int end = expression.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated quote in tag expression");
+                }
+                // Кавычки сохраняем, чтобы тег "and" не стал оператором
+                tokens.add(expression.substring(i, end + 1));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < expression.length() && !Character.isWhitespace(expression.charAt(i))
+                        && expression.charAt(i) != '(' && expression.charAt(i) != ')') {
+                    i++;
+                }
+                tokens.add(expression.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    final class Parser {
+        private final List<String> tokens;
+        private int position;
+
+        private Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        private TagExpression parseOr() {
+            TagExpression left = parseAnd();
+            while (accept("OR")) {
+                left = new Or(left, parseAnd());
+            }
+            return left;
+        }
+
+        private TagExpression parseAnd() {
+            TagExpression left = parseNot();
+            while (position < tokens.size() && !peekIs("OR") && !peekIs(")")) {
+                accept("AND");
+                left = new And(left, parseNot());
+            }
+            return left;
+        }
+
+        private TagExpression parseNot() {
+            if (accept("NOT")) {
+                return new Not(parseNot());
+            }
+            if (accept("(")) {
+                TagExpression inner = parseOr();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("Missing closing parenthesis in tag expression");
+                }
+                return inner;
+            }
+            if (position >= tokens.size() || peekIs(")") || peekIs("AND") || peekIs("OR")) {
+                throw new IllegalArgumentException("Tag expected in tag expression");
+            }
+
+            String token = tokens.get(position++);
+            if (token.length() >= 2 && token.startsWith("\"")) {
+                token = token.substring(1, token.length() - 1);
+            }
+            return new Tag(token);
+        }
+
+        private boolean peekIs(String token) {
+            return position < tokens.size() && tokens.get(position).equalsIgnoreCase(token);
+        }
+
+        private boolean accept(String token) {
+            if (peekIs(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
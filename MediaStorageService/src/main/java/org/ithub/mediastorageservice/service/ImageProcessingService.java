@@ -1,7 +1,14 @@
 package org.ithub.mediastorageservice.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.config.VariantProfile;
+import org.ithub.mediastorageservice.enums.FitMode;
+import org.ithub.mediastorageservice.enums.VariantFormat;
+import org.ithub.mediastorageservice.image.ImageResampler;
+import org.ithub.mediastorageservice.image.JpegEncoder;
 import org.ithub.mediastorageservice.model.MediaFile;
 import org.ithub.mediastorageservice.model.MediaVariant;
 import org.ithub.mediastorageservice.repository.MediaVariantRepository;
@@ -13,6 +20,11 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Service
@@ -20,84 +32,228 @@ import java.io.IOException;
 public class ImageProcessingService {
     private final MediaStorageService mediaStorageService;
     private final MediaVariantRepository mediaVariantRepository;
+    private final MediaBlobService mediaBlobService;
+    private final ImageResampler imageResampler;
+    private final JpegEncoder jpegEncoder;
+    private final MeterRegistry meterRegistry;
 
     /**
-     * Создание миниатюры изображения
+     * Декодирование изображения из массива байт
      */
-    public MediaVariant createThumbnail(MediaFile mediaFile, byte[] imageData, int width, int height) {
-        return createResizedVariant(mediaFile, imageData, width, height, "thumbnail");
+    public BufferedImage decodeImage(byte[] imageData) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageData));
+            if (image == null) {
+                throw new IllegalArgumentException("Cannot read image data");
+            }
+            return image;
+        } catch (IOException e) {
+            log.error("Error decoding image: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to decode image", e);
+        } finally {
+            // Оригинал декодируется один раз на все варианты
+            sample.stop(stageTimer("decode", "original"));
+        }
     }
 
     /**
-     * Создание варианта изображения измененного размера
+     * Создание всех вариантов из одного декодированного изображения.
+     * Варианты строятся от большего к меньшему, и каждый следующий уменьшается
+     * из ближайшего подходящего промежуточного изображения, а не из оригинала.
+     * Профили с одинаковым результатом (размер, формат, качество) кодируются и загружаются один раз,
+     * остальные получают запись, ссылающуюся на тот же объект хранилища.
+     * Профиль, для которого пришлось бы увеличивать изображение, не лучше оригинала:
+     * его запись ссылается на сам оригинал, чтобы вариант по имени оставался доступен
      */
-    public MediaVariant createResizedVariant(MediaFile mediaFile, byte[] imageData, int width, int height, String variantName) {
-        try {
-            // Читаем оригинальное изображение
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(imageData);
-            BufferedImage originalImage = ImageIO.read(inputStream);
+    public List<MediaVariant> createVariants(MediaFile mediaFile, BufferedImage originalImage, List<VariantProfile> profiles) {
+        return createVariants(mediaFile, originalImage, profiles, false);
+    }
 
-            if (originalImage == null) {
-                throw new IllegalArgumentException("Cannot read image data");
+    /**
+     * Создание варианта по запросу. Варианты профилей у файлов с общим содержимым общие,
+     * а варианты по запросу у каждого файла свои, поэтому ключ в хранилище включает id файла
+     */
+    public MediaVariant createOnDemandVariant(MediaFile mediaFile, BufferedImage originalImage, VariantProfile profile) {
+        return createVariants(mediaFile, originalImage, List.of(profile), true).get(0);
+    }
+
+    private List<MediaVariant> createVariants(MediaFile mediaFile, BufferedImage originalImage, List<VariantProfile> profiles,
+                                              boolean onDemand) {
+        int originalWidth = originalImage.getWidth();
+        int originalHeight = originalImage.getHeight();
+
+        // Целевые размеры считаем от оригинала, чтобы округление промежуточных шагов не накапливалось
+        List<VariantTarget> targets = new ArrayList<>();
+        for (VariantProfile profile : profiles) {
+            targets.add(calculateTarget(originalWidth, originalHeight, profile));
+        }
+        targets.sort(Comparator.comparingLong((VariantTarget t) -> (long) t.sourceWidth() * t.sourceHeight()).reversed());
+
+        // Пирамида уже полученных изображений, от большего к меньшему
+        List<BufferedImage> pyramid = new ArrayList<>();
+        Map<String, MediaVariant> variantsByName = new HashMap<>();
+        Map<VariantOutput, MediaVariant> variantsByOutput = new HashMap<>();
+
+        for (VariantTarget target : targets) {
+            if (target.sourceWidth() > originalWidth || target.sourceHeight() > originalHeight) {
+                variantsByName.put(target.name(), storeOriginalAlias(mediaFile, originalImage, target.name()));
+                continue;
             }
 
-            // Создаем уменьшенное изображение с сохранением пропорций
-            BufferedImage resizedImage = resizeImage(originalImage, width, height);
+            MediaVariant same = variantsByOutput.get(target.output());
+            if (same != null) {
+                variantsByName.put(target.name(), storeAlias(mediaFile, same, target.name()));
+                continue;
+            }
 
-            // Сохраняем в формате JPEG
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            ImageIO.write(resizedImage, "JPEG", outputStream);
-            byte[] resizedImageData = outputStream.toByteArray();
+            BufferedImage source = findNearestSource(originalImage, pyramid, target.sourceWidth(), target.sourceHeight());
+            Timer.Sample resize = Timer.start(meterRegistry);
+            BufferedImage resizedImage;
+            if (target.fit() == FitMode.CROP) {
+                // Обрезанное изображение не годится как источник для других вариантов
+                resizedImage = cropAndScaleImage(source, target.width(), target.height());
+            } else {
+                resizedImage = scaleImage(source, target.width(), target.height());
+                pyramid.add(resizedImage);
+            }
+            resize.stop(stageTimer("resize", target.name()));
+
+            MediaVariant variant = storeVariant(mediaFile, resizedImage, target, onDemand);
+            variantsByName.put(target.name(), variant);
+            variantsByOutput.put(target.output(), variant);
+        }
+
+        // Возвращаем варианты в порядке профилей
+        return profiles.stream()
+                .map(profile -> variantsByName.get(profile.getName()))
+                .toList();
+    }
+
+    /**
+     * Кодирование варианта, загрузка в хранилище и сохранение записи
+     */
+    private MediaVariant storeVariant(MediaFile mediaFile, BufferedImage resizedImage, VariantTarget target, boolean onDemand) {
+        String variantName = target.name();
+
+        // Кодируем в формат варианта с его качеством
+        Timer.Sample encode = Timer.start(meterRegistry);
+        byte[] resizedImageData = encode(resizedImage, target.format(), target.quality());
+        encode.stop(stageTimer("encode", variantName));
+
+        // Формируем путь в хранилище; у варианта по запросу: исходный_путь/variants/имя_варианта/id_файла/имя_файла
+        String storageKey = onDemand
+                ? generateVariantKey(mediaFile.getStorageKey(), variantName + "/" + mediaFile.getId())
+                : generateVariantKey(mediaFile.getStorageKey(), variantName);
+
+        // Загружаем в MinIO
+        Timer.Sample upload = Timer.start(meterRegistry);
+        mediaStorageService.uploadBytes(resizedImageData, storageKey, target.format().getContentType());
+        upload.stop(stageTimer("upload", variantName));
+        mediaBlobService.register(storageKey, null);
+
+        // Создаем запись о варианте
+        MediaVariant variant = new MediaVariant();
+        variant.setMediaFile(mediaFile);
+        variant.setVariantName(variantName);
+        variant.setStorageKey(storageKey);
+        variant.setWidth(resizedImage.getWidth());
+        variant.setHeight(resizedImage.getHeight());
+        variant.setSize((long) resizedImageData.length);
+        variant.setContentType(target.format().getContentType());
+
+        return mediaVariantRepository.save(variant);
+    }
+
+    /**
+     * Запись варианта, совпадающего с уже созданным: объект хранилища общий, берем на него еще одну ссылку
+     */
+    private MediaVariant storeAlias(MediaFile mediaFile, MediaVariant same, String variantName) {
+        mediaBlobService.register(same.getStorageKey(), null);
+
+        MediaVariant variant = new MediaVariant();
+        variant.setMediaFile(mediaFile);
+        variant.setVariantName(variantName);
+        variant.setStorageKey(same.getStorageKey());
+        variant.setWidth(same.getWidth());
+        variant.setHeight(same.getHeight());
+        variant.setSize(same.getSize());
+        variant.setContentType(same.getContentType());
+
+        return mediaVariantRepository.save(variant);
+    }
 
-            // Формируем путь в хранилище
-            String storageKey = generateVariantKey(mediaFile.getStorageKey(), variantName);
+    /**
+     * Запись варианта, который ссылается на оригинал файла
+     */
+    private MediaVariant storeOriginalAlias(MediaFile mediaFile, BufferedImage originalImage, String variantName) {
+        mediaBlobService.registerOriginalAlias(mediaFile.getStorageKey());
 
-            // Загружаем в MinIO
-            mediaStorageService.uploadBytes(resizedImageData, storageKey, "image/jpeg");
+        MediaVariant variant = new MediaVariant();
+        variant.setMediaFile(mediaFile);
+        variant.setVariantName(variantName);
+        variant.setStorageKey(mediaFile.getStorageKey());
+        variant.setWidth(originalImage.getWidth());
+        variant.setHeight(originalImage.getHeight());
+        variant.setSize(mediaFile.getSize());
+        variant.setContentType(mediaFile.getMimeType());
 
-            // Создаем запись о варианте
-            MediaVariant variant = new MediaVariant();
-            variant.setMediaFile(mediaFile);
-            variant.setVariantName(variantName);
-            variant.setStorageKey(storageKey);
-            variant.setWidth(resizedImage.getWidth());
-            variant.setHeight(resizedImage.getHeight());
-            variant.setSize((long) resizedImageData.length);
+        return mediaVariantRepository.save(variant);
+    }
 
-            return mediaVariantRepository.save(variant);
+    private byte[] encode(BufferedImage image, VariantFormat format, float quality) {
+        if (format == VariantFormat.JPEG) {
+            return jpegEncoder.encode(image, quality);
+        }
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", outputStream);
+            return outputStream.toByteArray();
         } catch (IOException e) {
-            log.error("Error creating image variant: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to create image variant", e);
+            log.error("Error encoding image variant: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to encode image variant", e);
         }
     }
 
     /**
-     * Оптимизация изображения для социальной сети
+     * Таймер этапа обработки варианта (decode, resize, encode, upload)
      */
-    public MediaVariant optimizeForSocialNetwork(MediaFile mediaFile, byte[] imageData, String network) {
-        // Разные настройки для разных соцсетей
-        if ("instagram".equalsIgnoreCase(network)) {
-            // Instagram - квадратное изображение
-            return createResizedVariant(mediaFile, imageData, 1080, 1080, "instagram");
-        } else if ("vk".equalsIgnoreCase(network)) {
-            // ВКонтакте - соотношение сторон 16:9
-            return createResizedVariant(mediaFile, imageData, 1280, 720, "vk");
-        } else if ("telegram".equalsIgnoreCase(network)) {
-            // Telegram - макс. ширина 1280px
-            return createResizedVariant(mediaFile, imageData, 1280, 0, "telegram");
-        } else {
-            // По умолчанию
-            return createResizedVariant(mediaFile, imageData, 1200, 630, "social");
+    private Timer stageTimer(String stage, String variantName) {
+        return Timer.builder("media.variants.stage")
+                .description("Variant processing time by stage and variant name")
+                .tag("stage", stage)
+                .tag("variant", variantName)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Поиск наименьшего изображения пирамиды, которое не меньше целевого размера.
+     * Если такого нет (увеличение), используется оригинал
+     */
+    private BufferedImage findNearestSource(BufferedImage originalImage, List<BufferedImage> pyramid, int width, int height) {
+        for (int i = pyramid.size() - 1; i >= 0; i--) {
+            BufferedImage candidate = pyramid.get(i);
+            if (candidate.getWidth() >= width && candidate.getHeight() >= height) {
+                return candidate;
+            }
         }
+        return originalImage;
     }
 
     /**
-     * Изменение размера изображения с сохранением пропорций
+     * Изменение размера изображения с сохранением пропорций.
+     * Видимость пакетная для бенчмарков (модуль benchmarks)
      */
-    private BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight) {
-        int originalWidth = originalImage.getWidth();
-        int originalHeight = originalImage.getHeight();
+    BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight) {
+        Dimension size = calculateTargetSize(originalImage.getWidth(), originalImage.getHeight(), targetWidth, targetHeight);
+        return scaleImage(originalImage, size.width, size.height);
+    }
 
+    /**
+     * Вычисление итогового размера с сохранением пропорций.
+     * Видимость пакетная для бенчмарков (модуль benchmarks)
+     */
+    static Dimension calculateTargetSize(int originalWidth, int originalHeight, int targetWidth, int targetHeight) {
         // Если одно из измерений равно 0, вычисляем его с сохранением пропорций
         if (targetWidth == 0 && targetHeight > 0) {
             double ratio = (double) targetHeight / originalHeight;
@@ -117,29 +273,76 @@ public class ImageProcessingService {
             }
         }
 
-        // Создаем новое изображение
-        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = resizedImage.createGraphics();
+        return new Dimension(Math.max(1, targetWidth), Math.max(1, targetHeight));
+    }
 
-        try {
-            // Настройки для лучшего качества
-            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    /**
+     * Целевой размер варианта и размер, который для него нужен от источника
+     */
+    private VariantTarget calculateTarget(int originalWidth, int originalHeight, VariantProfile profile) {
+        if (profile.getFit() == FitMode.CROP && profile.getWidth() > 0 && profile.getHeight() > 0) {
+            // Масштаб, при котором изображение покрывает целевой размер целиком
+            double scale = Math.max((double) profile.getWidth() / originalWidth, (double) profile.getHeight() / originalHeight);
+            int coverWidth = (int) Math.ceil(originalWidth * scale);
+            int coverHeight = (int) Math.ceil(originalHeight * scale);
+            return new VariantTarget(profile.getName(), profile.getWidth(), profile.getHeight(), FitMode.CROP,
+                    coverWidth, coverHeight, profile.getFormat(), profile.getQuality());
+        }
 
-            // Рисуем изображение
-            g.drawImage(originalImage, 0, 0, targetWidth, targetHeight, null);
-        } finally {
-            g.dispose();
+        Dimension size = calculateTargetSize(originalWidth, originalHeight, profile.getWidth(), profile.getHeight());
+        return new VariantTarget(profile.getName(), size.width, size.height, FitMode.FIT, size.width, size.height,
+                profile.getFormat(), profile.getQuality());
+    }
+
+    /**
+     * Масштабирование с обрезкой: из центра источника берется область с пропорциями
+     * целевого размера и масштабируется до него
+     */
+    private BufferedImage cropAndScaleImage(BufferedImage sourceImage, int targetWidth, int targetHeight) {
+        int sourceWidth = sourceImage.getWidth();
+        int sourceHeight = sourceImage.getHeight();
+
+        int cropWidth = sourceWidth;
+        int cropHeight = sourceHeight;
+        if ((long) sourceWidth * targetHeight > (long) sourceHeight * targetWidth) {
+            cropWidth = Math.max(1, (int) Math.round((double) sourceHeight * targetWidth / targetHeight));
+        } else {
+            cropHeight = Math.max(1, (int) Math.round((double) sourceWidth * targetHeight / targetWidth));
         }
+        int x = (sourceWidth - cropWidth) / 2;
+        int y = (sourceHeight - cropHeight) / 2;
 
-        return resizedImage;
+        return scaleImage(sourceImage.getSubimage(x, y, cropWidth, cropHeight), targetWidth, targetHeight);
+    }
+
+    /**
+     * Масштабирование изображения до точного размера
+     */
+    private BufferedImage scaleImage(BufferedImage sourceImage, int targetWidth, int targetHeight) {
+        return imageResampler.resize(sourceImage, targetWidth, targetHeight);
+    }
+
+    /**
+     * Целевой размер варианта, вычисленный от оригинала, и размер, который нужен от источника
+     */
+    private record VariantTarget(String name, int width, int height, FitMode fit, int sourceWidth, int sourceHeight,
+                                 VariantFormat format, float quality) {
+        VariantOutput output() {
+            return new VariantOutput(width, height, format, quality);
+        }
+    }
+
+    /**
+     * Параметры, от которых зависит содержимое варианта
+     */
+    private record VariantOutput(int width, int height, VariantFormat format, float quality) {
     }
 
     /**
-     * Генерация ключа для варианта изображения
+     * Генерация ключа для варианта изображения.
+     * Видимость пакетная для бенчмарков (модуль benchmarks)
      */
-    private String generateVariantKey(String originalKey, String variantName) {
+    String generateVariantKey(String originalKey, String variantName) {
         // Примерная структура: исходный_путь/variants/имя_варианта/имя_файла
         int lastSlashIndex = originalKey.lastIndexOf("/");
         if (lastSlashIndex == -1) {
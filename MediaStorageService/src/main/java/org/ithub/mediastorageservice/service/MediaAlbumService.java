@@ -5,17 +5,29 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.ithub.mediastorageservice.dto.MediaAlbumDTO;
 import org.ithub.mediastorageservice.dto.MediaFileDTO;
+import org.ithub.mediastorageservice.dto.PaginatedResponseDTO;
 import org.ithub.mediastorageservice.model.MediaAlbum;
 import org.ithub.mediastorageservice.model.MediaFile;
 import org.ithub.mediastorageservice.repository.MediaAlbumRepository;
+import org.ithub.mediastorageservice.repository.MediaFileRepository;
+import org.ithub.mediastorageservice.util.KeysetCursor;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 @Slf4j
 @Service
@@ -23,6 +35,15 @@ import java.util.stream.Collectors;
 public class MediaAlbumService {
     private final MediaAlbumRepository mediaAlbumRepository;
     private final MediaFileService mediaFileService;
+    private final MediaFileRepository mediaFileRepository;
+
+    // Сколько файлов показывать в превью альбома
+    private static final int PREVIEW_SIZE = 4;
+
+    // Поля MediaFile, по которым можно сортировать файлы альбома
+    private static final Set<String> SORTABLE_FILE_FIELDS = Set.of(
+            "id", "originalFilename", "size", "mediaType", "mimeType", "status",
+            "uploadedBy", "width", "height", "createdAt", "updatedAt");
 
     /**
      * Сохранение альбома
@@ -45,7 +66,7 @@ public class MediaAlbumService {
     public Page<MediaAlbumDTO> findAll(Pageable pageable) {
         log.debug("Finding all albums with pageable: {}", pageable);
         Page<MediaAlbum> albums = mediaAlbumRepository.findAll(pageable);
-        return albums.map(this::convertToDTO);
+        return new PageImpl<>(convertToDTOs(albums.getContent()), albums.getPageable(), albums.getTotalElements());
     }
 
     /**
@@ -54,120 +75,177 @@ public class MediaAlbumService {
     public Page<MediaAlbumDTO> findByIsPublic(Boolean isPublic, Pageable pageable) {
         log.debug("Finding albums with isPublic={} and pageable: {}", isPublic, pageable);
         Page<MediaAlbum> albums = mediaAlbumRepository.findByIsPublic(isPublic, pageable);
-        return albums.map(this::convertToDTO);
+        return new PageImpl<>(convertToDTOs(albums.getContent()), albums.getPageable(), albums.getTotalElements());
     }
 
     /**
-     * Получение файлов из альбома с пагинацией
+     * Просмотр альбомов по курсору, от новых к старым, без OFFSET и count(*).
+     * Общее число считается только по запросу (withTotal)
      */
-    public Page<MediaFileDTO> getFilesFromAlbum(Long albumId, Pageable pageable) {
-        log.debug("Getting files from album with id: {} and pageable: {}", albumId, pageable);
+    public PaginatedResponseDTO<MediaAlbumDTO> scrollAlbums(Boolean isPublic, String cursor, int size, boolean withTotal) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Invalid size");
+        }
+        KeysetCursor position = KeysetCursor.decode(cursor);
 
-        MediaAlbum album = getAlbum(albumId);
+        // Одна лишняя запись показывает, есть ли следующая страница
+        Limit limit = Limit.of(size + 1);
+        List<MediaAlbum> albums = isPublic != null
+                ? mediaAlbumRepository.findByIsPublicPageBefore(isPublic, position.createdAt(), position.id(), limit)
+                : mediaAlbumRepository.findPageBefore(position.createdAt(), position.id(), limit);
 
-        // Преобразуем список файлов в Page
-        List<MediaFile> mediaFiles = album.getMediaFiles();
+        Long total = null;
+        if (withTotal) {
+            total = isPublic != null ? mediaAlbumRepository.countByIsPublic(isPublic) : mediaAlbumRepository.count();
+        }
 
-        // Применяем пагинацию вручную
-        int start = (int)pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), mediaFiles.size());
+        boolean hasNext = albums.size() > size;
+        List<MediaAlbum> page = hasNext ? albums.subList(0, size) : albums;
+        MediaAlbum last = hasNext ? page.get(page.size() - 1) : null;
+
+        return PaginatedResponseDTO.<MediaAlbumDTO>builder()
+                .content(convertToDTOs(page))
+                .pageSize(size)
+                .totalElements(total)
+                .isFirst(position == KeysetCursor.START)
+                .isLast(!hasNext)
+                .nextCursor(last != null ? new KeysetCursor(last.getCreatedAt(), last.getId()).encode() : null)
+                .build();
+    }
 
-        if (start > mediaFiles.size()) {
-            return Page.empty(pageable);
-        }
+    /**
+     * Получение файлов из альбома с пагинацией.
+     * Сортировка и выборка страницы выполняются в БД, коллекция альбома не загружается
+     */
+    public Page<MediaFileDTO> getFilesFromAlbum(Long albumId, Pageable pageable) {
+        log.debug("Getting files from album with id: {} and pageable: {}", albumId, pageable);
 
-        // Применяем сортировку
-        Sort sort = pageable.getSort();
-        if (sort.isSorted()) {
-            // Сортировка файлов по указанному полю (упрощенная реализация)
-            mediaFiles.sort((a, b) -> {
-                Sort.Order order = sort.iterator().next();
-                int result = 0;
-
-                // Сравниваем по указанному полю (здесь только для createdAt)
-                if (order.getProperty().equals("createdAt")) {
-                    result = a.getCreatedAt().compareTo(b.getCreatedAt());
-                }
-
-                // Инвертируем результат для DESC сортировки
-                return order.isAscending() ? result : -result;
-            });
+        if (!mediaAlbumRepository.existsById(albumId)) {
+            throw new EntityNotFoundException("MediaAlbum not found with id: " + albumId);
         }
 
-        // Берем нужный подсписок
-        List<MediaFile> pageContent = mediaFiles.subList(start, end);
-
-        // Конвертируем в DTO
-        List<MediaFileDTO> contentDto = pageContent.stream()
-                .map(mediaFileService::convertToDTO)
-                .collect(Collectors.toList());
+        // Проверяем поля сортировки и добавляем id для стабильного порядка между страницами
+        for (Sort.Order order : pageable.getSort()) {
+            if (!SORTABLE_FILE_FIELDS.contains(order.getProperty())) {
+                throw new IllegalArgumentException("Unsupported sort field: " + order.getProperty());
+            }
+        }
+        Sort sort = pageable.getSort().getOrderFor("id") != null
+                ? pageable.getSort()
+                : pageable.getSort().and(Sort.by(Sort.Direction.DESC, "id"));
+        Pageable sortedPageable = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort);
 
-        return new PageImpl<>(contentDto, pageable, mediaFiles.size());
+        Page<MediaFile> mediaFiles = mediaFileRepository.findByAlbumId(albumId, sortedPageable);
+        return mediaFileService.convertToDTOPage(mediaFiles);
     }
 
     /**
      * Добавление файла в альбом
      */
+    @Transactional
     public void addFileToAlbum(Long mediaId, Long albumId) {
-        MediaFile mediaFile = mediaFileService.getMediaFile(mediaId);
-        MediaAlbum mediaAlbum = getAlbum(albumId);
+        // Проверяем, что файл и альбом существуют
+        mediaFileService.getMediaFile(mediaId);
+        requireAlbum(albumId);
 
-        // проверим нету ли mediaFile уже в альбоме
-        if (mediaAlbum.getMediaFiles().contains(mediaFile)) {
-            return; // Файл уже в альбоме
+        // Добавляем запись в таблицу альбома; 0 - файл уже в альбоме
+        if (mediaAlbumRepository.insertItem(albumId, mediaId) == 0) {
+            return;
         }
 
-        // Добавляем медаи файл в альбом
-        mediaAlbum.getMediaFiles().add(mediaFile);
-
-        // Сохраняем в бд
-        mediaAlbumRepository.save(mediaAlbum);
+        refreshSummaries(List.of(albumId));
     }
 
     /**
      * Удаление файла из альбома
      */
+    @Transactional
     public void removeFileFromAlbum(Long mediaId, Long albumId) {
-        MediaFile mediaFile = mediaFileService.getMediaFile(mediaId);
-        MediaAlbum mediaAlbum = getAlbum(albumId);
+        requireAlbum(albumId);
 
-        // Удаляем медаи файл из альбома
-        mediaAlbum.getMediaFiles().remove(mediaFile);
-
-        // Сохраняем в бд
-        mediaAlbumRepository.save(mediaAlbum);
+        if (mediaAlbumRepository.deleteItem(albumId, mediaId) > 0) {
+            refreshSummaries(List.of(albumId));
+        }
     }
 
     /**
      * Удаление файла из всех альбомов
      */
+    @Transactional
     public void removeFileFromAllAlbums(MediaFile mediaFile) {
-        List<MediaAlbum> albums = mediaAlbumRepository.findByMediaFilesContaining(mediaFile);
-        for (MediaAlbum album : albums) {
-            album.getMediaFiles().remove(mediaFile);
-            mediaAlbumRepository.save(album);
+        List<Long> albumIds = mediaAlbumRepository.findAlbumIdsByMediaId(mediaFile.getId());
+        if (albumIds.isEmpty()) {
+            return;
         }
+
+        mediaAlbumRepository.deleteItemsByMediaId(mediaFile.getId());
+        refreshSummaries(albumIds);
+    }
+
+    /**
+     * Пересчет сводки для нескольких альбомов после изменения их файлов.
+     * Строки альбомов блокируются до конца транзакции: параллельная транзакция ждет,
+     * а ее подсчет выполняется уже после фиксации этой и видит ее файлы
+     */
+    @Transactional
+    public void refreshSummaries(Collection<Long> albumIds) {
+        if (!albumIds.isEmpty()) {
+            mediaAlbumRepository.findAllByIdForUpdate(albumIds).forEach(this::refreshSummary);
+        }
+    }
+
+    private void requireAlbum(Long albumId) {
+        if (!mediaAlbumRepository.existsById(albumId)) {
+            throw new EntityNotFoundException("MediaAlbum not found with id: " + albumId);
+        }
+    }
+
+    /**
+     * Пересчет сводки альбома: количество файлов и id самых новых файлов для превью
+     */
+    private void refreshSummary(MediaAlbum mediaAlbum) {
+        mediaAlbum.setItemCount((int) mediaAlbumRepository.countItems(mediaAlbum.getId()));
+        mediaAlbum.setPreviewMediaIds(new ArrayList<>(
+                mediaAlbumRepository.findItemMediaIds(mediaAlbum.getId(), PREVIEW_SIZE)));
+        mediaAlbumRepository.save(mediaAlbum);
     }
 
     /**
      * Конвертация MediaAlbum в MediaAlbumDTO
      */
     public MediaAlbumDTO convertToDTO(MediaAlbum mediaAlbum) {
-        // Получаем только первые несколько файлов для превью
-        List<MediaFileDTO> previewFiles = mediaAlbum.getMediaFiles().stream()
-                .limit(4)
-                .map(mediaFileService::convertToDTO)
-                .toList();
+        return convertToDTOs(List.of(mediaAlbum)).get(0);
+    }
 
-        return MediaAlbumDTO.builder()
-                .id(mediaAlbum.getId())
-                .name(mediaAlbum.getName())
-                .description(mediaAlbum.getDescription())
-                .createdAt(mediaAlbum.getCreatedAt())
-                .createdBy(mediaAlbum.getCreatedBy())
-                .isPublic(mediaAlbum.getIsPublic())
-                .previewFiles(previewFiles)
-                .fileCount(mediaAlbum.getMediaFiles().size())
-                .build();
+    /**
+     * Конвертация списка альбомов в MediaAlbumDTO.
+     * Используется сохраненная сводка альбома, поэтому коллекция файлов не загружается,
+     * а файлы превью всех альбомов загружаются и конвертируются одним пакетом.
+     * Сводку старых альбомов заполняет db/migration/003_media_albums_summary.sql
+     */
+    public List<MediaAlbumDTO> convertToDTOs(List<MediaAlbum> mediaAlbums) {
+        Set<Long> previewIds = new HashSet<>();
+        mediaAlbums.forEach(album -> previewIds.addAll(album.getPreviewMediaIds()));
+
+        Map<Long, MediaFileDTO> previewDtos = new HashMap<>();
+        for (MediaFileDTO dto : mediaFileService.convertToDTOs(mediaFileRepository.findAllById(previewIds))) {
+            previewDtos.put(dto.getId(), dto);
+        }
+
+        return mediaAlbums.stream()
+                .map(album -> MediaAlbumDTO.builder()
+                        .id(album.getId())
+                        .name(album.getName())
+                        .description(album.getDescription())
+                        .createdAt(album.getCreatedAt())
+                        .createdBy(album.getCreatedBy())
+                        .isPublic(album.getIsPublic())
+                        .previewFiles(album.getPreviewMediaIds().stream()
+                                .map(previewDtos::get)
+                                .filter(Objects::nonNull)
+                                .toList())
+                        .fileCount(album.getItemCount())
+                        .build())
+                .toList();
     }
 }
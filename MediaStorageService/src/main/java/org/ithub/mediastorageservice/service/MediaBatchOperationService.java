@@ -0,0 +1,263 @@
+package org.ithub.mediastorageservice.service;
+
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.dto.MediaBatchItemResultDTO;
+import org.ithub.mediastorageservice.dto.MediaBatchOperationRequestDTO;
+import org.ithub.mediastorageservice.dto.MediaBatchOperationResultDTO;
+import org.ithub.mediastorageservice.dto.MediaBatchTagRequestDTO;
+import org.ithub.mediastorageservice.enums.MediaTagType;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.repository.MediaAlbumRepository;
+import org.ithub.mediastorageservice.repository.MediaFileRepository;
+import org.ithub.mediastorageservice.repository.MediaTagRepository;
+import org.ithub.mediastorageservice.repository.MediaVariantRepository;
+import org.ithub.mediastorageservice.search.MediaSearchIndex;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Пакетные операции над медиа-файлами: удаление, добавление в альбом и удаление из альбома, изменение тегов.
+ * Идентификаторы обрабатываются порциями, каждая порция - несколько set-based запросов
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaBatchOperationService {
+    private final MediaFileRepository mediaFileRepository;
+    private final MediaVariantRepository mediaVariantRepository;
+    private final MediaTagRepository mediaTagRepository;
+    private final MediaAlbumRepository mediaAlbumRepository;
+    private final MediaAlbumService mediaAlbumService;
+    private final MediaBlobService mediaBlobService;
+    private final TransactionTemplate transactionTemplate;
+    private final MediaSearchIndex mediaSearchIndex;
+
+    // Размер порции id в одном запросе
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final Set<String> SUPPORTED_OPERATIONS = Set.of("delete", "addToAlbum", "removeFromAlbum");
+
+    /**
+     * Выполнение пакетной операции
+     */
+    public MediaBatchOperationResultDTO execute(MediaBatchOperationRequestDTO request) {
+        if (request.getMediaIds() == null || request.getMediaIds().isEmpty()) {
+            throw new IllegalArgumentException("mediaIds must not be empty");
+        }
+        String operation = request.getOperation();
+        if (!SUPPORTED_OPERATIONS.contains(operation)) {
+            throw new IllegalArgumentException("Unsupported batch operation: " + operation);
+        }
+        Long albumId = "delete".equals(operation) ? null : requireAlbum(request.getAlbumId());
+
+        List<Long> mediaIds = request.getMediaIds().stream()
+                .distinct()
+                .toList();
+        log.info("Executing batch operation {} for {} media files", operation, mediaIds.size());
+
+        List<MediaBatchItemResultDTO> results = new ArrayList<>(mediaIds.size());
+        for (int from = 0; from < mediaIds.size(); from += CHUNK_SIZE) {
+            List<Long> chunk = mediaIds.subList(from, Math.min(from + CHUNK_SIZE, mediaIds.size()));
+            switch (operation) {
+                case "delete" -> results.addAll(deleteChunk(chunk));
+                case "addToAlbum" -> results.addAll(addToAlbumChunk(albumId, chunk));
+                default -> results.addAll(removeFromAlbumChunk(albumId, chunk));
+            }
+        }
+
+        int succeeded = (int) results.stream().filter(MediaBatchItemResultDTO::getSuccess).count();
+        return MediaBatchOperationResultDTO.builder()
+                .operation(operation)
+                .total(results.size())
+                .succeeded(succeeded)
+                .failed(results.size() - succeeded)
+                .results(results)
+                .build();
+    }
+
+    /**
+     * Добавление и удаление тегов у многих файлов. На каждую порцию - один INSERT ... ON CONFLICT DO NOTHING
+     * и один DELETE, вне зависимости от числа тегов и файлов
+     */
+    public MediaBatchOperationResultDTO applyTags(MediaBatchTagRequestDTO request) {
+        if (request.getMediaIds() == null || request.getMediaIds().isEmpty()) {
+            throw new IllegalArgumentException("mediaIds must not be empty");
+        }
+        Set<String> addTags = normalizeTags(request.getAddTags());
+        Set<String> removeTags = normalizeTags(request.getRemoveTags());
+        if (addTags.isEmpty() && removeTags.isEmpty()) {
+            throw new IllegalArgumentException("addTags or removeTags must not be empty");
+        }
+        if (!Collections.disjoint(addTags, removeTags)) {
+            throw new IllegalArgumentException("The same tag cannot be added and removed in one request");
+        }
+
+        List<Long> mediaIds = request.getMediaIds().stream()
+                .distinct()
+                .toList();
+        log.info("Applying tags to {} media files: +{} -{}", mediaIds.size(), addTags, removeTags);
+
+        List<MediaBatchItemResultDTO> results = new ArrayList<>(mediaIds.size());
+        for (int from = 0; from < mediaIds.size(); from += CHUNK_SIZE) {
+            results.addAll(tagChunk(mediaIds.subList(from, Math.min(from + CHUNK_SIZE, mediaIds.size())), addTags, removeTags));
+        }
+
+        int succeeded = (int) results.stream().filter(MediaBatchItemResultDTO::getSuccess).count();
+        return MediaBatchOperationResultDTO.builder()
+                .operation("tags")
+                .total(results.size())
+                .succeeded(succeeded)
+                .failed(results.size() - succeeded)
+                .results(results)
+                .build();
+    }
+
+    /**
+     * Удаление порции файлов: set-based удаление в БД с освобождением ссылок на объекты,
+     * затем один запрос removeObjects в MinIO для объектов, на которые больше никто не ссылается.
+     * Строки файлов блокируются до чтения вариантов и альбомов, поэтому вариант или элемент альбома,
+     * добавленный параллельно, либо виден в этой транзакции, либо не вставится после удаления
+     */
+    private List<MediaBatchItemResultDTO> deleteChunk(List<Long> chunk) {
+        Map<Long, MediaBatchItemResultDTO> results = new LinkedHashMap<>();
+        chunk.forEach(id -> results.put(id, failure(id, "Media file not found")));
+
+        List<Long> foundIds = new ArrayList<>();
+        List<String> unreferencedKeys = transactionTemplate.execute(status -> {
+            List<MediaFile> mediaFiles = mediaFileRepository.findAllByIdForUpdate(chunk);
+            if (mediaFiles.isEmpty()) {
+                return List.of();
+            }
+            mediaFiles.forEach(file -> foundIds.add(file.getId()));
+
+            // Ключи хранения оригиналов и всех вариантов
+            List<String> storageKeys = new ArrayList<>();
+            mediaFiles.forEach(file -> storageKeys.add(file.getStorageKey()));
+            mediaVariantRepository.findByMediaFileIdIn(foundIds)
+                    .forEach(variant -> storageKeys.add(variant.getStorageKey()));
+            Set<Long> affectedAlbums = new HashSet<>(mediaAlbumRepository.findAlbumIdsByMediaIds(foundIds));
+
+            mediaVariantRepository.deleteByMediaFileIdIn(foundIds);
+            mediaTagRepository.deleteByMediaFileIdIn(foundIds);
+            mediaAlbumRepository.deleteItemsByMediaIds(foundIds);
+            mediaFileRepository.deleteAllByIdInBatch(foundIds);
+            mediaAlbumService.refreshSummaries(affectedAlbums);
+            return mediaBlobService.release(storageKeys);
+        });
+        if (foundIds.isEmpty()) {
+            return new ArrayList<>(results.values());
+        }
+
+        mediaSearchIndex.remove(foundIds);
+
+        // Ошибки хранилища не откатывают удаление: записи и ссылки уже удалены
+        mediaBlobService.deleteObjects(unreferencedKeys);
+
+        foundIds.forEach(id -> results.put(id, success(id)));
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * Добавление порции файлов в альбом одним INSERT ... SELECT
+     */
+    private List<MediaBatchItemResultDTO> addToAlbumChunk(Long albumId, List<Long> chunk) {
+        Set<Long> existingIds = new HashSet<>(mediaFileRepository.findExistingIds(chunk));
+
+        if (!existingIds.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                mediaAlbumRepository.insertItems(albumId, existingIds);
+                mediaAlbumService.refreshSummaries(List.of(albumId));
+            });
+        }
+
+        return chunk.stream()
+                .map(id -> existingIds.contains(id) ? success(id) : failure(id, "Media file not found"))
+                .toList();
+    }
+
+    /**
+     * Удаление порции файлов из альбома одним DELETE
+     */
+    private List<MediaBatchItemResultDTO> removeFromAlbumChunk(Long albumId, List<Long> chunk) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (mediaAlbumRepository.deleteItems(albumId, chunk) > 0) {
+                mediaAlbumService.refreshSummaries(List.of(albumId));
+            }
+        });
+
+        // Удаление идемпотентно: файлы, которых не было в альбоме, тоже считаются успешными
+        return chunk.stream()
+                .map(this::success)
+                .toList();
+    }
+
+    /**
+     * Теги для порции файлов: set-based удаление и вставка в одной транзакции,
+     * затем обновление поискового индекса
+     */
+    private List<MediaBatchItemResultDTO> tagChunk(List<Long> chunk, Set<String> addTags, Set<String> removeTags) {
+        Set<Long> existingIds = new HashSet<>(mediaFileRepository.findExistingIds(chunk));
+
+        if (!existingIds.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!removeTags.isEmpty()) {
+                    mediaTagRepository.deleteByMediaFileIdInAndNameIn(existingIds, removeTags);
+                }
+                if (!addTags.isEmpty()) {
+                    mediaTagRepository.insertTags(existingIds, addTags, MediaTagType.MANUAL.name());
+                }
+            });
+
+            existingIds.forEach(id -> {
+                mediaSearchIndex.removeTags(id, removeTags);
+                mediaSearchIndex.addTags(id, addTags);
+            });
+        }
+
+        return chunk.stream()
+                .map(id -> existingIds.contains(id) ? success(id) : failure(id, "Media file not found"))
+                .toList();
+    }
+
+    private Set<String> normalizeTags(Set<String> tags) {
+        if (tags == null) {
+            return Set.of();
+        }
+        return tags.stream()
+                .filter(Objects::nonNull)
+                .map(String::trim)
+                .filter(tag -> !tag.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private Long requireAlbum(Long albumId) {
+        if (albumId == null) {
+            throw new IllegalArgumentException("albumId is required for album operations");
+        }
+        if (!mediaAlbumRepository.existsById(albumId)) {
+            throw new EntityNotFoundException("MediaAlbum not found with id: " + albumId);
+        }
+        return albumId;
+    }
+
+    private MediaBatchItemResultDTO success(Long mediaId) {
+        return new MediaBatchItemResultDTO(mediaId, true, null);
+    }
+
+    private MediaBatchItemResultDTO failure(Long mediaId, String error) {
+        return new MediaBatchItemResultDTO(mediaId, false, error);
+    }
+}
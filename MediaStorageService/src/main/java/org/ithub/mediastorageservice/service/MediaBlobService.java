@@ -0,0 +1,127 @@
+package org.ithub.mediastorageservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.repository.MediaBlobRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Подсчет ссылок на объекты хранилища. Файлы с одинаковым содержимым
+ * ссылаются на один объект и одни и те же варианты
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaBlobService {
+    private final MediaBlobRepository mediaBlobRepository;
+    private final MediaStorageService mediaStorageService;
+    private final MediaDiskCacheService mediaDiskCacheService;
+    private final MediaVariantMemoryCacheService mediaVariantMemoryCacheService;
+
+    /**
+     * Регистрация ссылки на только что записанный объект
+     */
+    @Transactional
+    public void register(String storageKey, String contentHash) {
+        mediaBlobRepository.register(storageKey, contentHash);
+    }
+
+    /**
+     * Ссылка записи варианта на оригинал файла (вариант, для которого пришлось бы увеличивать изображение).
+     * Оригинал, загруженный до появления подсчета, сначала получает ссылку самого файла,
+     * иначе освобождение варианта удалило бы оригинал из хранилища
+     */
+    @Transactional
+    public void registerOriginalAlias(String storageKey) {
+        if (mediaBlobRepository.findExistingKeys(List.of(storageKey)).isEmpty()) {
+            mediaBlobRepository.register(storageKey, null);
+        }
+        mediaBlobRepository.register(storageKey, null);
+    }
+
+    /**
+     * Взятие ссылок сразу на все объекты, по одной на каждое вхождение ключа - так же,
+     * как их потом освобождает release. Если хотя бы один объект уже удаляется,
+     * ни одна ссылка не берется и возвращается false
+     */
+    @Transactional
+    public boolean acquireAll(Collection<String> storageKeys) {
+        // Несколько вариантов одного файла могут ссылаться на один объект
+        Map<String, Long> counts = countKeys(storageKeys);
+        int acquired = counts.keySet().stream()
+                .collect(Collectors.groupingBy(key -> counts.get(key).intValue()))
+                .entrySet().stream()
+                .mapToInt(group -> mediaBlobRepository.acquire(group.getValue(), group.getKey()))
+                .sum();
+        if (acquired != counts.size()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Освобождение ссылок. Возвращает ключи объектов, на которые больше никто не ссылается;
+     * их нужно удалить из хранилища после коммита транзакции.
+     * Объекты без записи о ссылках (загруженные до появления подсчета) принадлежат одному файлу
+     */
+    @Transactional
+    public List<String> release(Collection<String> storageKeys) {
+        if (storageKeys.isEmpty()) {
+            return List.of();
+        }
+
+        // Один ключ может встречаться несколько раз, если удаляются файлы с общим содержимым
+        Map<String, Long> counts = countKeys(storageKeys);
+        Set<String> trackedKeys = new HashSet<>(mediaBlobRepository.findExistingKeys(counts.keySet()));
+
+        List<String> unreferenced = new ArrayList<>();
+        counts.keySet().stream()
+                .filter(key -> !trackedKeys.contains(key))
+                .forEach(unreferenced::add);
+        if (trackedKeys.isEmpty()) {
+            return unreferenced;
+        }
+
+        // Одно обновление на каждую кратность, обычно это один запрос
+        trackedKeys.stream()
+                .collect(Collectors.groupingBy(key -> counts.get(key).intValue()))
+                .forEach((count, keys) -> mediaBlobRepository.release(keys, count));
+
+        unreferenced.addAll(mediaBlobRepository.findUnreferencedKeys(trackedKeys));
+        mediaBlobRepository.deleteUnreferenced(trackedKeys);
+        return unreferenced;
+    }
+
+    private static Map<String, Long> countKeys(Collection<String> storageKeys) {
+        return storageKeys.stream()
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    }
+
+    /**
+     * Удаление из хранилища объектов, на которые больше нет ссылок.
+     * Ошибки только логируются: записи уже удалены, в MinIO остаются лишние объекты
+     */
+    public void deleteObjects(List<String> storageKeys) {
+        if (storageKeys == null || storageKeys.isEmpty()) {
+            return;
+        }
+        mediaDiskCacheService.invalidate(storageKeys);
+        mediaVariantMemoryCacheService.invalidate(storageKeys);
+        Map<String, String> errors = mediaStorageService.deleteFiles(storageKeys);
+        if (!errors.isEmpty()) {
+            log.warn("Could not delete {} unreferenced objects from MinIO: {}", errors.size(), errors);
+        }
+    }
+}
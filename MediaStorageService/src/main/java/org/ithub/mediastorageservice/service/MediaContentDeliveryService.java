@@ -0,0 +1,210 @@
+package org.ithub.mediastorageservice.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.dto.MediaContentDTO;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Потоковая отдача содержимого файлов клиенту с поддержкой Range и If-Range.
+ * Данные копируются из MinIO напрямую в ответ, без загрузки файла в память.
+ * Небольшие варианты отдаются из памяти, остальные объекты - с локального диска,
+ * если включен дисковый кеш: системным вызовом sendfile в Tomcat, без копирования через heap
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaContentDeliveryService {
+    private final MediaStorageService mediaStorageService;
+    private final MediaDiskCacheService mediaDiskCacheService;
+    private final MediaVariantMemoryCacheService mediaVariantMemoryCacheService;
+
+    // Атрибуты запроса, через которые Tomcat отдает файл системным вызовом sendfile
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Отдача содержимого (целиком или запрошенного диапазона)
+     */
+    public void deliver(MediaContentDTO content, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        HttpHeaders requestHeaders = new ServletServerHttpRequest(request).getHeaders();
+        long size = content.getSize() != null ? content.getSize() : mediaStorageService.getFileSize(content.getStorageKey());
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(content.getContentType());
+        if (content.getEtag() != null) {
+            response.setHeader(HttpHeaders.ETAG, content.getEtag());
+        }
+        if (content.getLastModified() != null) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, content.getLastModified().toEpochMilli());
+        }
+        if (content.getFilename() != null) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline()
+                    .filename(content.getFilename(), StandardCharsets.UTF_8)
+                    .build()
+                    .toString());
+        }
+
+        long start = 0;
+        long length = size;
+
+        HttpRange range = resolveRange(content, requestHeaders);
+        if (range != null) {
+            try {
+                start = range.getRangeStart(size);
+                length = range.getRangeEnd(size) - start + 1;
+            } catch (IllegalArgumentException e) {
+                // Диапазон за пределами файла
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + length - 1) + "/" + size);
+        } else {
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+        response.setContentLengthLong(length);
+
+        if (HttpMethod.HEAD.matches(request.getMethod()) || length == 0) {
+            return;
+        }
+
+        if (content.isMemoryCacheable()) {
+            Optional<ByteBuffer> cached = mediaVariantMemoryCacheService.get(content.getStorageKey(), size);
+            if (cached.isPresent()) {
+                ByteBuffer slice = cached.get().position((int) start).limit((int) (start + length));
+                Channels.newChannel(response.getOutputStream()).write(slice);
+                return;
+            }
+        }
+
+        if (mediaDiskCacheService.isEnabled()) {
+            // Диапазон при промахе отдается из MinIO сразу, а кеш заполняется в фоне:
+            // ради нескольких байт клиент не ждет скачивания всего объекта
+            Optional<MediaDiskCacheService.Pin> cached = range != null
+                    ? mediaDiskCacheService.pinOrFillAsync(content.getStorageKey(), size)
+                    : mediaDiskCacheService.pinOrFill(content.getStorageKey(), size);
+            if (cached.isPresent()) {
+                try (MediaDiskCacheService.Pin pin = cached.get()) {
+                    if (serveFromFile(pin, start, length, request, response)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        mediaStorageService.copyFile(content.getStorageKey(), start, length, response.getOutputStream());
+    }
+
+    /**
+     * Отдача диапазона из файла дискового кеша. Если Tomcat поддерживает sendfile, данные
+     * идут из файла в сокет без копирования через heap. Иначе - FileChannel.transferTo в поток ответа:
+     * это копирование через буфер в heap, но без загрузки файла в память целиком.
+     * Возвращает false, если файл удален в обход кеша
+     */
+    private boolean serveFromFile(MediaDiskCacheService.Pin pin, long start, long length, HttpServletRequest request,
+                                  HttpServletResponse response) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            Optional<Path> link = pin.sendfileLink();
+            if (link.isPresent()) {
+                request.setAttribute(SENDFILE_FILENAME_ATTR, link.get().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTR, start);
+                request.setAttribute(SENDFILE_END_ATTR, start + length);
+                return true;
+            }
+        }
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(pin.path(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        try (channel) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long end = start + length;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("Cached file is shorter than expected: " + pin.path());
+                }
+                position += transferred;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Определение запрошенного диапазона. Возвращает null, если нужно отдать файл целиком:
+     * диапазона нет, он некорректен, запрошено несколько диапазонов или не выполнено условие If-Range
+     */
+    private HttpRange resolveRange(MediaContentDTO content, HttpHeaders requestHeaders) {
+        List<HttpRange> ranges;
+        try {
+            ranges = requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring invalid Range header: {}", e.getMessage());
+            return null;
+        }
+
+        // Несколько диапазонов (multipart/byteranges) не поддерживаем, отдаем файл целиком
+        if (ranges.size() != 1) {
+            return null;
+        }
+
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !isIfRangeSatisfied(content, ifRange.trim())) {
+            return null;
+        }
+
+        return ranges.get(0);
+    }
+
+    /**
+     * Проверка If-Range: содержит либо сильный ETag, либо дату последнего изменения
+     */
+    private boolean isIfRangeSatisfied(MediaContentDTO content, String ifRange) {
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Для If-Range допускается только сильное сравнение
+            return content.getEtag() != null && !ifRange.startsWith("W/") && ifRange.equals(content.getEtag());
+        }
+
+        if (content.getLastModified() == null) {
+            return false;
+        }
+        try {
+            Instant date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return date.getEpochSecond() == content.getLastModified().getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
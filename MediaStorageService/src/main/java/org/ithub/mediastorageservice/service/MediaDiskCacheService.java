@@ -0,0 +1,509 @@
+package org.ithub.mediastorageservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.util.SingleFlight;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Локальный дисковый кеш объектов MinIO для отдачи содержимого.
+ * Вытеснение LRU по суммарному размеру в байтах, запись через временный файл
+ * с атомарным переименованием, поэтому читатели никогда не видят недописанный файл.
+ * Файл, который сейчас отдается, закреплен: вытеснение и invalidate убирают его из индекса сразу,
+ * а удаляют с диска, когда закрепление снимет последний читатель.
+ * Для sendfile Tomcat открывает файл уже после выхода из сервлета, поэтому ему передается
+ * жесткая ссылка на файл кеша, которую вытеснение не трогает
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaDiskCacheService {
+    private final MediaStorageService mediaStorageService;
+    private final MeterRegistry meterRegistry;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Подкаталог жестких ссылок для sendfile
+    private static final String SENDFILE_LINKS_DIR = "sendfile";
+
+    @Value("${media.cache.disk.enabled:false}")
+    private boolean enabled;
+
+    @Value("${media.cache.disk.directory:${java.io.tmpdir}/media-cache}")
+    private String directory;
+
+    // Бюджет кеша на диске
+    @Value("${media.cache.disk.max-bytes:1073741824}")
+    private long maxBytes;
+
+    // Объекты больше этого размера (например, видео) отдаются напрямую из MinIO
+    @Value("${media.cache.disk.max-object-size:33554432}")
+    private long maxObjectSize;
+
+    // Фоновое заполнение кеша после промаха по запросу диапазона
+    @Value("${media.cache.disk.fill-workers:2}")
+    private int fillWorkers;
+
+    @Value("${media.cache.disk.fill-queue-capacity:100}")
+    private int fillQueueCapacity;
+
+    // Через сколько удаляется ссылка для sendfile. Tomcat открывает ее сразу после выхода из сервлета,
+    // а открытый файл отдается и после удаления ссылки
+    @Value("${media.cache.disk.sendfile-link-ttl-ms:60000}")
+    private long sendfileLinkTtlMs;
+
+    // Файлы кеша в порядке доступа (LRU) по имени файла; доступ под монитором entries
+    private final LinkedHashMap<String, CachedFile> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private Path cacheDir;
+    private Path linksDir;
+
+    // Ссылки для sendfile в порядке создания
+    private final ConcurrentLinkedQueue<SendfileLink> sendfileLinks = new ConcurrentLinkedQueue<>();
+
+    // Одно скачивание на ключ при параллельных промахах
+    private final SingleFlight<String, Boolean> fills = new SingleFlight<>();
+
+    // Ключи, уже поставленные в очередь фонового заполнения
+    private final Set<String> pendingFills = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor fillExecutor;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter evictions;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        hits = meterRegistry.counter("media.cache.disk", "result", "hit");
+        misses = meterRegistry.counter("media.cache.disk", "result", "miss");
+        evictions = meterRegistry.counter("media.cache.disk.evictions");
+        Gauge.builder("media.cache.disk.size", this, cache -> cache.currentBytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("media.cache.disk.entries", this, cache -> cache.currentEntries())
+                .register(meterRegistry);
+
+        try {
+            cacheDir = Path.of(directory);
+            linksDir = cacheDir.resolve(SENDFILE_LINKS_DIR);
+            Files.createDirectories(linksDir);
+            removeSendfileLinks();
+            loadExistingFiles();
+        } catch (IOException e) {
+            log.error("Error initializing disk cache in {}: {}", directory, e.getMessage(), e);
+            throw new RuntimeException("Could not initialize disk cache", e);
+        }
+        // Очередь ограничена: если она заполнена, объект просто не попадет в кеш
+        fillExecutor = new ThreadPoolExecutor(
+                fillWorkers, fillWorkers,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(fillQueueCapacity),
+                new CustomizableThreadFactory("disk-cache-fill-"),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        log.info("Disk cache enabled in {}: {} entries, {} of {} bytes", cacheDir, entries.size(), totalBytes, maxBytes);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (fillExecutor != null) {
+            // Недописанные временные файлы удаляются при следующем запуске
+            fillExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Закрепленный файл с содержимым объекта. При промахе объект скачивается из MinIO,
+     * параллельные промахи по одному ключу ждут одно скачивание.
+     * Пустой результат означает, что объект нужно отдать напрямую из MinIO
+     */
+    public Optional<Pin> pinOrFill(String storageKey, long size) {
+        if (!isCacheable(size)) {
+            return Optional.empty();
+        }
+
+        String name = fileName(storageKey);
+        Optional<Pin> cached = pin(name);
+        if (cached.isPresent()) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        fills.execute(name, () -> fill(storageKey, name, size));
+        return pin(name);
+    }
+
+    /**
+     * Закрепленный файл из кеша без ожидания MinIO. При промахе объект скачивается в фоне,
+     * а пустой результат означает, что этот запрос нужно отдать напрямую из MinIO
+     */
+    public Optional<Pin> pinOrFillAsync(String storageKey, long size) {
+        if (!isCacheable(size)) {
+            return Optional.empty();
+        }
+
+        String name = fileName(storageKey);
+        Optional<Pin> cached = pin(name);
+        if (cached.isPresent()) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        if (pendingFills.add(name)) {
+            try {
+                fillExecutor.execute(() -> {
+                    try {
+                        fills.execute(name, () -> fill(storageKey, name, size));
+                    } finally {
+                        pendingFills.remove(name);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pendingFills.remove(name);
+                log.debug("Disk cache fill queue is full, {} will not be cached", storageKey);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Удаление ссылок для sendfile, созданных раньше sendfile-link-ttl-ms
+     */
+    @Scheduled(fixedDelayString = "${media.cache.disk.sendfile-link-ttl-ms:60000}")
+    public void removeStaleSendfileLinks() {
+        Instant cutoff = Instant.now().minusMillis(sendfileLinkTtlMs);
+        SendfileLink link;
+        while ((link = sendfileLinks.peek()) != null && link.createdAt().isBefore(cutoff)) {
+            if (sendfileLinks.remove(link)) {
+                deleteQuietly(link.path());
+            }
+        }
+    }
+
+    /**
+     * Удаление объектов из кеша (после удаления из хранилища)
+     */
+    public void invalidate(Collection<String> storageKeys) {
+        if (!enabled) {
+            return;
+        }
+
+        List<Path> removed = new ArrayList<>();
+        synchronized (entries) {
+            for (String storageKey : storageKeys) {
+                CachedFile cached = entries.remove(fileName(storageKey));
+                if (cached != null && detach(cached)) {
+                    removed.add(cached.path);
+                }
+            }
+        }
+        removed.forEach(this::deleteQuietly);
+    }
+
+    private boolean isCacheable(long size) {
+        return enabled && size > 0 && size <= maxObjectSize && size <= maxBytes;
+    }
+
+    /**
+     * Закрепление файла из индекса. Файл, удаленный с диска в обход кеша, убирается из индекса
+     */
+    private Optional<Pin> pin(String name) {
+        synchronized (entries) {
+            CachedFile cached = entries.get(name);
+            if (cached == null) {
+                return Optional.empty();
+            }
+            if (!Files.isRegularFile(cached.path)) {
+                log.warn("Cached file {} is missing", cached.path);
+                entries.remove(name);
+                detach(cached);
+                return Optional.empty();
+            }
+            cached.readers++;
+            return Optional.of(new Pin(cached));
+        }
+    }
+
+    /**
+     * Снятие закрепления. Файл, убранный из индекса, пока его читали, удаляется последним читателем.
+     * Если под тем же именем уже лежит новый файл, его не трогаем
+     */
+    private void unpin(CachedFile file) {
+        synchronized (entries) {
+            file.readers--;
+            if (file.readers == 0 && file.removed && !entries.containsKey(file.name)) {
+                deleteQuietly(file.path);
+            }
+        }
+    }
+
+    /**
+     * Учет файла, убранного из индекса. Возвращает true, если файл можно удалять сразу:
+     * его никто не читает. Вызывать под монитором entries
+     */
+    private boolean detach(CachedFile file) {
+        totalBytes -= file.size;
+        file.removed = true;
+        return file.readers == 0;
+    }
+
+    /**
+     * Жесткая ссылка на закрепленный файл для sendfile. Пустой результат - файловая система
+     * не поддерживает жесткие ссылки, отдавать нужно через канал
+     */
+    private Optional<Path> createSendfileLink(CachedFile file) {
+        Path link = linksDir.resolve(file.name + "-" + UUID.randomUUID());
+        try {
+            Files.createLink(link, file.path);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Could not link cached file {} for sendfile: {}", file.path, e.getMessage());
+            return Optional.empty();
+        }
+        sendfileLinks.add(new SendfileLink(link, Instant.now()));
+        return Optional.of(link);
+    }
+
+    /**
+     * Удаление ссылок для sendfile, оставшихся после перезапуска
+     */
+    private void removeSendfileLinks() throws IOException {
+        try (Stream<Path> links = Files.list(linksDir)) {
+            links.forEach(this::deleteQuietly);
+        }
+    }
+
+    /**
+     * Скачивание объекта во временный файл и атомарная публикация под постоянным именем.
+     * Возвращает false, если объект не удалось сохранить
+     */
+    private boolean fill(String storageKey, String name, long size) {
+        synchronized (entries) {
+            // Заполнение, которое закончилось до этого вызова, уже положило файл
+            if (entries.containsKey(name)) {
+                return true;
+            }
+        }
+
+        Path target = cacheDir.resolve(name.substring(0, 2)).resolve(name);
+        Path temp = null;
+        try {
+            Files.createDirectories(target.getParent());
+            temp = Files.createTempFile(target.getParent(), name, TEMP_SUFFIX);
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                mediaStorageService.copyFile(storageKey, 0, size, out);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            log.warn("Could not cache {} on disk: {}", storageKey, e.getMessage());
+            if (temp != null) {
+                deleteQuietly(temp);
+            }
+            return false;
+        }
+
+        List<Path> evicted;
+        synchronized (entries) {
+            // Файл мог остаться от заполнения до invalidate, учитываем его один раз.
+            // Путь у него тот же и уже занят новым файлом, поэтому он не удаляется
+            CachedFile previous = entries.put(name, new CachedFile(name, target, size));
+            if (previous != null) {
+                detach(previous);
+            }
+            totalBytes += size;
+            evicted = evictOverBudget(name);
+        }
+        evicted.forEach(this::deleteQuietly);
+
+        return true;
+    }
+
+    /**
+     * Вытеснение самых давно использованных файлов, пока кеш не уложится в бюджет.
+     * Только что добавленный файл не вытесняется, закрепленные файлы удалит последний читатель.
+     * Вызывать под монитором entries
+     */
+    private List<Path> evictOverBudget(String keep) {
+        List<Path> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, CachedFile>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, CachedFile> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            iterator.remove();
+            if (detach(eldest.getValue())) {
+                evicted.add(eldest.getValue().path);
+            }
+            if (evictions != null) {
+                evictions.increment();
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Восстановление индекса после перезапуска: порядок LRU по времени изменения файлов,
+     * недописанные временные файлы удаляются
+     */
+    private void loadExistingFiles() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(cacheDir, 2)) {
+            files = stream.filter(Files::isRegularFile)
+                    .filter(file -> !file.startsWith(linksDir))
+                    .toList();
+        }
+
+        List<Map.Entry<Path, BasicFileAttributes>> cached = new ArrayList<>();
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                deleteQuietly(file);
+                continue;
+            }
+            cached.add(Map.entry(file, Files.readAttributes(file, BasicFileAttributes.class)));
+        }
+        cached.sort(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()));
+
+        List<Path> evicted;
+        synchronized (entries) {
+            for (Map.Entry<Path, BasicFileAttributes> entry : cached) {
+                String name = entry.getKey().getFileName().toString();
+                entries.put(name, new CachedFile(name, entry.getKey(), entry.getValue().size()));
+                totalBytes += entry.getValue().size();
+            }
+            evicted = evictOverBudget(null);
+        }
+        evicted.forEach(this::deleteQuietly);
+    }
+
+    private long currentBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    private int currentEntries() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete cached file {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Имя файла в кеше: SHA-256 ключа хранения, файлы раскладываются по подкаталогам
+     * по первым двум символам
+     */
+    private static String fileName(String storageKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(storageKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Закрепленный файл кеша. Пока закрепление не снято, файл не удаляется с диска
+     */
+    public final class Pin implements AutoCloseable {
+        private final CachedFile file;
+        private boolean released;
+
+        private Pin(CachedFile file) {
+            this.file = file;
+        }
+
+        public Path path() {
+            return file.path;
+        }
+
+        /**
+         * Жесткая ссылка для sendfile: Tomcat откроет ее после выхода из сервлета, когда закрепление
+         * уже снято. Пустой результат - отдавать через канал
+         */
+        public Optional<Path> sendfileLink() {
+            return createSendfileLink(file);
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                unpin(file);
+            }
+        }
+    }
+
+    private static final class CachedFile {
+        private final String name;
+        private final Path path;
+        private final long size;
+
+        // Число читателей и признак того, что файл убран из индекса; под монитором entries
+        private int readers;
+        private boolean removed;
+
+        private CachedFile(String name, Path path, long size) {
+            this.name = name;
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    private record SendfileLink(Path path, Instant createdAt) {
+    }
+}
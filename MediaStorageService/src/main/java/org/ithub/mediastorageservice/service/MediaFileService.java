@@ -1,28 +1,45 @@
 package org.ithub.mediastorageservice.service;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.dto.MediaContentDTO;
 import org.ithub.mediastorageservice.dto.MediaFileDTO;
+import org.ithub.mediastorageservice.dto.PaginatedResponseDTO;
+import org.ithub.mediastorageservice.dto.StoredObjectDTO;
 import org.ithub.mediastorageservice.enums.MediaStatus;
 import org.ithub.mediastorageservice.enums.MediaType;
+import org.ithub.mediastorageservice.image.ImageHeaderInfo;
+import org.ithub.mediastorageservice.image.ImageProbe;
 import org.ithub.mediastorageservice.model.MediaFile;
 import org.ithub.mediastorageservice.model.MediaVariant;
 import org.ithub.mediastorageservice.repository.MediaFileRepository;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
+import org.ithub.mediastorageservice.search.MediaSearchIndex;
+import org.ithub.mediastorageservice.util.KeysetCursor;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 @Slf4j
@@ -34,7 +51,21 @@ public class MediaFileService {
     private final MediaTagService mediaTagService;
     private final MediaVariantService mediaVariantService;
     private final MediaAlbumService mediaAlbumService;
-
+    private final VariantProcessingPipeline variantProcessingPipeline;
+    private final ImageProbe imageProbe;
+    private final MediaBlobService mediaBlobService;
+    private final TransactionTemplate transactionTemplate;
+    private final MediaSearchIndex mediaSearchIndex;
+    private final MeterRegistry meterRegistry;
+
+    private Timer dtoConversionTimer;
+
+    @PostConstruct
+    public void initMetrics() {
+        dtoConversionTimer = Timer.builder("media.dto.conversion")
+                .description("Time to build MediaFileDTO lists, including tag and variant queries")
+                .register(meterRegistry);
+    }
 
     /**
      * Сохранение медиа-файла
@@ -62,28 +93,50 @@ public class MediaFileService {
      * Создание медиа-файла
      */
     public MediaFile createMediaFile(MultipartFile file, String description, Set<String> tags) throws IOException {
-        String contentType = file.getContentType();
-        MediaType mediaType = determineMediaType(contentType);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            // Один проход по потоку: загрузка в MinIO, размер, хеш и заголовок
+            StoredObjectDTO storedObject = mediaStorageService.uploadFile(file);
+
+            MediaFile mediaFile = registerMediaFile(file.getOriginalFilename(), file.getContentType(), storedObject, file, description, tags);
+            outcome = "success";
+            return mediaFile;
+        } finally {
+            sample.stop(Timer.builder("media.upload")
+                    .description("Upload latency from request to saved media file")
+                    .tag("type", determineMediaType(file.getContentType()).name())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
 
-        String storageKey = mediaStorageService.uploadFile(file);
+    /**
+     * Создание записи о файле, который уже загружен в хранилище.
+     * content используется только если размеры изображения не удалось прочитать из заголовка
+     */
+    public MediaFile registerMediaFile(String originalFilename, String contentType, StoredObjectDTO storedObject,
+                                       InputStreamSource content, String description, Set<String> tags) throws IOException {
+        MediaType mediaType = determineMediaType(contentType);
 
         MediaFile mediaFile = new MediaFile();
-        mediaFile.setOriginalFilename(file.getOriginalFilename());
-        mediaFile.setSize(file.getSize());
-        mediaFile.setStorageKey(storageKey);
+        mediaFile.setOriginalFilename(originalFilename);
+        mediaFile.setSize(storedObject.getSize());
+        mediaFile.setContentHash(storedObject.getContentHash());
+        mediaFile.setStorageKey(storedObject.getStorageKey());
         mediaFile.setMediaType(mediaType);
         mediaFile.setMimeType(contentType);
-        mediaFile.setStatus(MediaStatus.PROCESSING);
         mediaFile.setUploadedBy("currentUser"); // тут потом надо настроить, чтобы получать данные из контекста безопасности
 
-        // Для изображений извлекаем размеры
-        if (mediaType == MediaType.IMAGE) {
-            try (InputStream is = file.getInputStream()) {
-                BufferedImage bufferedImage = ImageIO.read(is);
-                if (bufferedImage != null) {
-                    mediaFile.setWidth(bufferedImage.getWidth());
-                    mediaFile.setHeight(bufferedImage.getHeight());
-                }
+        // Такое же содержимое уже загружено: ссылаемся на существующий объект и его варианты
+        List<MediaVariant> sharedVariants = reuseExistingContent(mediaFile);
+        if (sharedVariants == null) {
+            // Изображения ждут создания вариантов, остальные файлы готовы сразу после загрузки
+            mediaFile.setStatus(mediaType == MediaType.IMAGE ? MediaStatus.PROCESSING : MediaStatus.READY);
+
+            // Для изображений извлекаем размеры из заголовка, без декодирования всего изображения
+            if (mediaType == MediaType.IMAGE) {
+                readImageDimensions(mediaFile, storedObject.getHeader(), content);
             }
         }
 
@@ -92,71 +145,215 @@ public class MediaFileService {
             mediaFile.setMetadata(description);
         }
 
-        // Сохраняем файл в БД
-        MediaFile savedMediaFile = mediaFileRepository.save(mediaFile);
+        // Ссылка на объект, запись о файле, теги и копии вариантов фиксируются одной транзакцией
+        MediaFile savedMediaFile;
+        try {
+            savedMediaFile = transactionTemplate.execute(status -> {
+                if (sharedVariants == null) {
+                    mediaBlobService.register(storedObject.getStorageKey(), storedObject.getContentHash());
+                }
+
+                // Сохраняем файл в БД
+                MediaFile saved = mediaFileRepository.save(mediaFile);
 
-        // Добавляем теги
-        if (tags != null && !tags.isEmpty()) {
-            mediaTagService.addTagsToFile(savedMediaFile, tags);
+                // Добавляем теги
+                if (tags != null && !tags.isEmpty()) {
+                    mediaTagService.addTagsToFile(saved, tags);
+                }
+
+                if (sharedVariants != null) {
+                    mediaVariantService.copyVariants(sharedVariants, saved);
+                }
+                return saved;
+            });
+        } catch (RuntimeException e) {
+            if (mediaFile.getId() != 0) {
+                mediaSearchIndex.remove(List.of(mediaFile.getId()));
+            }
+            if (sharedVariants != null) {
+                releaseReusedContent(mediaFile, sharedVariants, e);
+            }
+            throw e;
         }
 
-        // Надо сделать метод асинхронным (запускаем создание вариантов)
-        if (mediaType == MediaType.IMAGE) {
-            mediaVariantService.processImageVariants(savedMediaFile);
+        meterRegistry.counter("media.status.transitions", "status", savedMediaFile.getStatus().name()).increment();
+        DistributionSummary.builder("media.upload.size")
+                .description("Size of uploaded files")
+                .baseUnit("bytes")
+                .tag("type", mediaType.name())
+                .register(meterRegistry)
+                .record(savedMediaFile.getSize());
+
+        mediaSearchIndex.index(savedMediaFile, tags);
+
+        if (sharedVariants != null) {
+            // Дубликат удаляется только после коммита: до этого при ошибке файл еще мог бы на него сослаться
+            mediaBlobService.deleteObjects(List.of(storedObject.getStorageKey()));
+        } else if (mediaType == MediaType.IMAGE) {
+            // Варианты создаются в фоне, файл остается в статусе PROCESSING до их готовности
+            variantProcessingPipeline.submit(savedMediaFile);
         }
 
         return savedMediaFile;
     }
 
+    /**
+     * Поиск готового файла с тем же SHA-256. Если ссылки на его оригинал и варианты взяты,
+     * новый файл получает ключ, размеры и статус существующего; только что загруженный объект
+     * удаляется после коммита записи. Возвращает варианты для копирования или null, если переиспользовать нечего
+     */
+    private List<MediaVariant> reuseExistingContent(MediaFile mediaFile) {
+        if (mediaFile.getContentHash() == null) {
+            return null;
+        }
+        // Файлы в обработке не подходят: их варианты еще не созданы
+        Optional<MediaFile> existing = mediaFileRepository.findFirstByContentHashAndStatusOrderByIdAsc(
+                mediaFile.getContentHash(), MediaStatus.READY);
+        if (existing.isEmpty() || !existing.get().getSize().equals(mediaFile.getSize())) {
+            return null;
+        }
+
+        MediaFile source = existing.get();
+        List<MediaVariant> variants = mediaVariantService.getAllVariantsByFileId(source.getId());
+
+        // Источник удаляется параллельно: загружаем как новый файл
+        if (!mediaBlobService.acquireAll(sharedKeys(source.getStorageKey(), variants))) {
+            return null;
+        }
+
+        String uploadedKey = mediaFile.getStorageKey();
+        mediaFile.setStorageKey(source.getStorageKey());
+        mediaFile.setStatus(MediaStatus.READY);
+        mediaFile.setWidth(source.getWidth());
+        mediaFile.setHeight(source.getHeight());
+        mediaFile.setColorModel(source.getColorModel());
+        mediaFile.setOrientation(source.getOrientation());
+
+        log.info("Content of {} matches media file {}, reusing {} and {} variants",
+                uploadedKey, source.getId(), source.getStorageKey(), variants.size());
+        return variants;
+    }
+
+    /**
+     * Возврат ссылок, взятых в reuseExistingContent, если запись о файле не сохранилась.
+     * Источник мог быть удален за это время - тогда его объекты удаляются здесь
+     */
+    private void releaseReusedContent(MediaFile mediaFile, List<MediaVariant> variants, RuntimeException cause) {
+        try {
+            List<String> unreferencedKeys = mediaBlobService.release(sharedKeys(mediaFile.getStorageKey(), variants));
+            mediaBlobService.deleteObjects(unreferencedKeys);
+        } catch (RuntimeException e) {
+            log.error("Could not release shared content of {}: {}", mediaFile.getStorageKey(), e.getMessage(), e);
+            cause.addSuppressed(e);
+        }
+    }
+
+    private static List<String> sharedKeys(String storageKey, List<MediaVariant> variants) {
+        List<String> keys = new ArrayList<>(variants.size() + 1);
+        keys.add(storageKey);
+        variants.forEach(variant -> keys.add(variant.getStorageKey()));
+        return keys;
+    }
+
     /**
      * Удаление медиа-файла
      */
     public void deleteMediaFile(Long id) {
         MediaFile mediaFile = getMediaFile(id);
 
-        // Удаляем оригинальный файл из хранилища
-        mediaStorageService.deleteFile(mediaFile.getStorageKey());
+        // Записи удаляются в одной транзакции вместе с освобождением ссылок на объекты хранилища
+        List<String> unreferencedKeys = transactionTemplate.execute(status -> {
+            // Удаляем все варианты
+            List<String> storageKeys = new ArrayList<>(mediaVariantService.deleteVariantsByMediaFileId(id));
+            storageKeys.add(mediaFile.getStorageKey());
 
-        // Удаляем все варианты
-        mediaVariantService.deleteVariantsByMediaFileId(id);
+            // Удаляем все теги
+            mediaTagService.deleteAllTagsByMediaFileId(id);
 
-        // Удаляем все теги
-        mediaTagService.deleteAllTagsByMediaFileId(id);
+            // Удаляем файл из всех альбомов (без удаления самих альбомов)
+            mediaAlbumService.removeFileFromAllAlbums(mediaFile);
 
-        // Удаляем файл из всех альбомов (без удаления самих альбомов)
-        mediaAlbumService.removeFileFromAllAlbums(mediaFile);
+            // Удаляем запись из БД
+            mediaFileRepository.delete(mediaFile);
 
-        // Удаляем запись из БД
-        mediaFileRepository.delete(mediaFile);
+            return mediaBlobService.release(storageKeys);
+        });
+
+        mediaSearchIndex.remove(List.of(id));
+
+        // Из хранилища удаляются только объекты, на которые больше никто не ссылается
+        mediaBlobService.deleteObjects(unreferencedKeys);
     }
 
     /**
-     * Получение содержимого файла
+     * Получение описания содержимого файла для потоковой отдачи
      */
-    public Resource getMediaContent(Long mediaId) {
+    public MediaContentDTO getMediaContent(Long mediaId) {
         MediaFile mediaFile = getMediaFile(mediaId);
+        LocalDateTime lastModified = mediaFile.getUpdatedAt() != null ? mediaFile.getUpdatedAt() : mediaFile.getCreatedAt();
 
-        // Получаем файл из хранилища
-        byte[] content = mediaStorageService.getFile(mediaFile.getStorageKey());
-
-        // Создаем ресурс для возврата
-        return new ByteArrayResource(content);
+        return MediaContentDTO.builder()
+                .storageKey(mediaFile.getStorageKey())
+                .contentType(mediaFile.getMimeType())
+                .size(mediaFile.getSize())
+                .etag(mediaFile.getContentHash() != null ? "\"" + mediaFile.getContentHash() + "\"" : null)
+                .lastModified(lastModified.atZone(ZoneId.systemDefault()).toInstant())
+                .filename(mediaFile.getOriginalFilename())
+                .build();
     }
 
     /**
      * Конвертация MediaFile в MediaFileDTO
      */
     public MediaFileDTO convertToDTO(MediaFile mediaFile) {
-        // Получаем теги для файла
-        Set<String> tags = mediaTagService.getTagsNameForFile(mediaFile.getId());
+        return convertToDTOs(List.of(mediaFile)).get(0);
+    }
+
+    /**
+     * Конвертация списка MediaFile в MediaFileDTO.
+     * Теги и варианты загружаются для всех файлов сразу (по одному запросу с IN),
+     * поэтому число запросов не зависит от размера списка
+     */
+    public List<MediaFileDTO> convertToDTOs(List<MediaFile> mediaFiles) {
+        if (mediaFiles.isEmpty()) {
+            return List.of();
+        }
+        return dtoConversionTimer.record(() -> buildDTOs(mediaFiles));
+    }
 
+    private List<MediaFileDTO> buildDTOs(List<MediaFile> mediaFiles) {
+        List<Long> ids = mediaFiles.stream()
+                .map(MediaFile::getId)
+                .toList();
+
+        // Получаем теги и варианты для всех файлов
+        Map<Long, Set<String>> tagsByFile = mediaTagService.getTagsNamesForFiles(ids);
+        Map<Long, List<MediaVariant>> variantsByFile = mediaVariantService.getAllVariantsByFileIds(ids);
+
+        return mediaFiles.stream()
+                .map(mediaFile -> buildDTO(
+                        mediaFile,
+                        tagsByFile.getOrDefault(mediaFile.getId(), Set.of()),
+                        variantsByFile.getOrDefault(mediaFile.getId(), List.of())))
+                .toList();
+    }
+
+    /**
+     * Конвертация страницы MediaFile в страницу MediaFileDTO
+     */
+    public Page<MediaFileDTO> convertToDTOPage(Page<MediaFile> mediaFiles) {
+        return new PageImpl<>(convertToDTOs(mediaFiles.getContent()), mediaFiles.getPageable(), mediaFiles.getTotalElements());
+    }
+
+    /**
+     * Сборка MediaFileDTO из уже загруженных тегов и вариантов
+     */
+    private MediaFileDTO buildDTO(MediaFile mediaFile, Set<String> tags, List<MediaVariant> variants) {
         // Создаем временный URL для оригинального файла
         String url = mediaStorageService.getPresignedUrl(mediaFile.getStorageKey(), 60);
 
-        // Получаем все варианты файла с URL
-        List<MediaVariant> variants = mediaVariantService.getAllVariantsByFileId(mediaFile.getId());
+        // Получаем URL для всех вариантов файла
         Map<String, String> variantUrls = new HashMap<>();
-
         for (MediaVariant variant : variants) {
             String variantUrl = mediaStorageService.getPresignedUrl(variant.getStorageKey(), 60);
             variantUrls.put(variant.getVariantName(), variantUrl);
@@ -197,7 +394,7 @@ public class MediaFileService {
             mediaFiles = mediaFileRepository.findByTagsInAndMediaType(tags, mediaType, pageable);
         }
 
-        return mediaFiles.map(this::convertToDTO);
+        return convertToDTOPage(mediaFiles);
     }
 
     /**
@@ -212,7 +409,83 @@ public class MediaFileService {
             mediaFiles = mediaFileRepository.findByTagsIn(tags, pageable);
         }
 
-        return mediaFiles.map(this::convertToDTO);
+        return convertToDTOPage(mediaFiles);
+    }
+
+    /**
+     * Просмотр файлов по курсору, от новых к старым. В отличие от постраничного поиска
+     * не выполняет OFFSET и count(*); общее число считается только по запросу (withTotal)
+     */
+    public PaginatedResponseDTO<MediaFileDTO> scrollFiles(Set<String> tags, MediaType mediaType,
+                                                          String cursor, int size, boolean withTotal) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Invalid size");
+        }
+        KeysetCursor position = KeysetCursor.decode(cursor);
+        boolean byTags = tags != null && !tags.isEmpty();
+
+        // Одна лишняя запись показывает, есть ли следующая страница
+        Limit limit = Limit.of(size + 1);
+        List<MediaFile> mediaFiles;
+        if (!byTags && mediaType == null) {
+            mediaFiles = mediaFileRepository.findPageBefore(position.createdAt(), position.id(), limit);
+        } else if (!byTags) {
+            mediaFiles = mediaFileRepository.findByMediaTypePageBefore(mediaType, position.createdAt(), position.id(), limit);
+        } else if (mediaType == null) {
+            mediaFiles = mediaFileRepository.findByTagsPageBefore(tags, position.createdAt(), position.id(), limit);
+        } else {
+            mediaFiles = mediaFileRepository.findByTagsAndMediaTypePageBefore(tags, mediaType, position.createdAt(), position.id(), limit);
+        }
+
+        Long total = null;
+        if (withTotal) {
+            if (!byTags && mediaType == null) {
+                total = mediaFileRepository.count();
+            } else if (!byTags) {
+                total = mediaFileRepository.countByMediaType(mediaType);
+            } else if (mediaType == null) {
+                total = mediaFileRepository.countByTags(tags);
+            } else {
+                total = mediaFileRepository.countByTagsAndMediaType(tags, mediaType);
+            }
+        }
+
+        boolean hasNext = mediaFiles.size() > size;
+        List<MediaFile> page = hasNext ? mediaFiles.subList(0, size) : mediaFiles;
+        MediaFile last = hasNext ? page.get(page.size() - 1) : null;
+
+        return PaginatedResponseDTO.<MediaFileDTO>builder()
+                .content(convertToDTOs(page))
+                .pageSize(size)
+                .totalElements(total)
+                .isFirst(position == KeysetCursor.START)
+                .isLast(!hasNext)
+                .nextCursor(last != null ? new KeysetCursor(last.getCreatedAt(), last.getId()).encode() : null)
+                .build();
+    }
+
+    /**
+     * Чтение размеров, цветовой модели и ориентации изображения из заголовка файла.
+     * Если формат не распознан, читаем изображение целиком
+     */
+    private void readImageDimensions(MediaFile mediaFile, byte[] header, InputStreamSource content) throws IOException {
+        Optional<ImageHeaderInfo> headerInfo = imageProbe.probe(header);
+        if (headerInfo.isPresent()) {
+            mediaFile.setWidth(headerInfo.get().getWidth());
+            mediaFile.setHeight(headerInfo.get().getHeight());
+            mediaFile.setColorModel(headerInfo.get().getColorModel());
+            mediaFile.setOrientation(headerInfo.get().getOrientation());
+            return;
+        }
+
+        log.debug("Unknown image header for {}, falling back to full decode", mediaFile.getStorageKey());
+        try (InputStream is = content.getInputStream()) {
+            BufferedImage bufferedImage = ImageIO.read(is);
+            if (bufferedImage != null) {
+                mediaFile.setWidth(bufferedImage.getWidth());
+                mediaFile.setHeight(bufferedImage.getHeight());
+            }
+        }
     }
 
     /**
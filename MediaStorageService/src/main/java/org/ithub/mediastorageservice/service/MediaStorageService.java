@@ -1,18 +1,44 @@
 package org.ithub.mediastorageservice.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.minio.*;
+import io.minio.errors.ErrorResponseException;
 import io.minio.http.Method;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Part;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.config.MultipartMinioClient;
+import org.ithub.mediastorageservice.dto.StoredObjectDTO;
+import org.ithub.mediastorageservice.util.InspectingInputStream;
+import org.ithub.mediastorageservice.util.SingleFlight;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -20,25 +46,98 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor
 public class MediaStorageService {
     private final MinioClient minioClient;
+    private final MultipartMinioClient multipartMinioClient;
+    private final MeterRegistry meterRegistry;
+
+    // Сколько первых байт файла сохраняем для чтения заголовка изображения
+    private static final int HEADER_CAPTURE_BYTES = 128 * 1024;
+
+    // Размер буфера при потоковой отдаче файлов клиенту
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
 
     @Value("${minio.bucketName}")
     private String bucketName;
 
+    // Доля TTL, которая должна остаться у ссылки, чтобы выдать ее повторно
+    @Value("${media.presign.cache.min-remaining-ratio:0.5}")
+    private double presignMinRemainingRatio;
+
+    @Value("${media.presign.cache.max-entries:100000}")
+    private int presignCacheMaxEntries;
+
+    // Кеш подписанных ссылок по ключу хранения и сроку действия
+    private Cache<PresignKey, String> presignedUrls;
+
+    // Сроки действия, с которыми подписывались ссылки: по ним удаляются ссылки на удаленный объект
+    private final Set<Integer> presignExpiries = ConcurrentHashMap.newKeySet();
+
+    // Объединение параллельных чтений одного объекта
+    private final SingleFlight<String, byte[]> fileReads = new SingleFlight<>();
+
+    private Counter presignCacheHits;
+    private Counter presignCacheMisses;
+    private Timer presignTimer;
+
+    @PostConstruct
+    public void initMetrics() {
+        // Ссылка выдается повторно, пока у нее остается не меньше min-remaining-ratio срока действия
+        presignedUrls = Caffeine.newBuilder()
+                .maximumSize(presignCacheMaxEntries)
+                .expireAfter(new Expiry<PresignKey, String>() {
+                    @Override
+                    public long expireAfterCreate(PresignKey key, String url, long currentTime) {
+                        return reuseWindow(key.expiryMinutes()).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(PresignKey key, String url, long currentTime, long currentDuration) {
+                        return reuseWindow(key.expiryMinutes()).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(PresignKey key, String url, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+
+        presignCacheHits = meterRegistry.counter("media.presign.cache", "result", "hit");
+        presignCacheMisses = meterRegistry.counter("media.presign.cache", "result", "miss");
+        presignTimer = Timer.builder("media.presign.sign")
+                .description("Time spent signing presigned URLs")
+                .register(meterRegistry);
+        Gauge.builder("media.presign.cache.size", presignedUrls, Cache::estimatedSize)
+                .register(meterRegistry);
+
+        // upstream - запросы в MinIO, coalesced - сэкономленные запросы
+        FunctionCounter.builder("media.storage.reads", fileReads, SingleFlight::getExecutions)
+                .tag("result", "upstream")
+                .register(meterRegistry);
+        FunctionCounter.builder("media.storage.reads", fileReads, SingleFlight::getCoalesced)
+                .tag("result", "coalesced")
+                .register(meterRegistry);
+        Gauge.builder("media.storage.reads.in-flight", fileReads, SingleFlight::getInFlight)
+                .register(meterRegistry);
+    }
+
     /**
      * Инициализация бакета при запуске
      */
     public void init() {
         try {
             // Проверка существования бакета
-            boolean found = minioClient.bucketExists(BucketExistsArgs.builder()
+            boolean found = timed("bucket_exists", () -> minioClient.bucketExists(BucketExistsArgs.builder()
                     .bucket(bucketName)
-                    .build());
+                    .build()));
 
             // Если бакета нет, создаем его
             if (!found) {
-                minioClient.makeBucket(MakeBucketArgs.builder()
-                        .bucket(bucketName)
-                        .build());
+                timed("make_bucket", () -> {
+                    minioClient.makeBucket(MakeBucketArgs.builder()
+                            .bucket(bucketName)
+                            .build());
+                    return null;
+                });
                 log.info("Bucket {} created successfully", bucketName);
             } else {
                 log.info("Bucket {} already exists", bucketName);
@@ -50,22 +149,29 @@ public class MediaStorageService {
     }
 
     /**
-     * Загрузка файла в MinIO
+     * Загрузка файла в MinIO за один проход по потоку.
+     * Параллельно с отправкой считаются размер, SHA-256 и сохраняется заголовок файла
      */
-    public String uploadFile(MultipartFile file) throws IOException {
-        try {
-            // Формируем уникальный ключ для хранения
-            String filename = generateFileName(file.getOriginalFilename());
+    public StoredObjectDTO uploadFile(MultipartFile file) throws IOException {
+        // Формируем уникальный ключ для хранения
+        String filename = generateFileName(file.getOriginalFilename());
 
-            // Загружаем файл в MinIO
-            minioClient.putObject(PutObjectArgs.builder()
+        try (InspectingInputStream inputStream = new InspectingInputStream(file.getInputStream(), HEADER_CAPTURE_BYTES)) {
+            // Размер известен заранее, поэтому MinIO не буферизует весь файл,
+            // а отправляет его частями фиксированного размера
+            timed("put_object", () -> minioClient.putObject(PutObjectArgs.builder()
                     .bucket(bucketName)
                     .object(filename)
-                    .stream(file.getInputStream(), file.getSize(), -1)
+                    .stream(inputStream, file.getSize(), -1)
                     .contentType(file.getContentType())
-                    .build());
+                    .build()));
 
-            return filename;
+            return StoredObjectDTO.builder()
+                    .storageKey(filename)
+                    .size(inputStream.getCount())
+                    .contentHash(inputStream.getSha256Hex())
+                    .header(inputStream.getHeader())
+                    .build();
         } catch (Exception e) {
             log.error("Error uploading file to MinIO: {}", e.getMessage(), e);
             throw new RuntimeException("Could not upload file to MinIO", e);
@@ -73,18 +179,70 @@ public class MediaStorageService {
     }
 
     /**
-     * Получение файла из MinIO
+     * Получение файла из MinIO. Параллельные чтения одного ключа объединяются в один запрос,
+     * все читатели получают один и тот же массив, поэтому изменять его нельзя
      */
     public byte[] getFile(String filename) {
+        return fileReads.execute(filename, () -> readFile(filename));
+    }
+
+    private byte[] readFile(String filename) {
+        // Получаем объект из MinIO и читаем содержимое в массив байтов
         try {
-            // Получаем объект из MinIO
-            GetObjectResponse response = minioClient.getObject(GetObjectArgs.builder()
+            return timed("get_object", () -> {
+                try (GetObjectResponse response = minioClient.getObject(GetObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(filename)
+                        .build())) {
+                    return response.readAllBytes();
+                }
+            });
+        } catch (Exception e) {
+            log.error("Error getting file from MinIO: {}", e.getMessage(), e);
+            throw new RuntimeException("Could not get file from MinIO", e);
+        }
+    }
+
+    /**
+     * Копирование файла (или диапазона байт) из MinIO в выходной поток через буфер фиксированного размера
+     */
+    public void copyFile(String filename, long offset, long length, OutputStream outputStream) throws IOException {
+        try {
+            // Время включает запись клиенту: медленный клиент растягивает и чтение из MinIO
+            timed("copy_object", () -> {
+                try (GetObjectResponse response = minioClient.getObject(GetObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(filename)
+                        .offset(offset)
+                        .length(length)
+                        .build())) {
+                    byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                    int read;
+                    while ((read = response.read(buffer)) != -1) {
+                        outputStream.write(buffer, 0, read);
+                    }
+                }
+                return null;
+            });
+        } catch (IOException e) {
+            // Обрыв соединения клиентом или сетевая ошибка при чтении
+            throw e;
+        } catch (Exception e) {
+            log.error("Error streaming file from MinIO: {}", e.getMessage(), e);
+            throw new RuntimeException("Could not stream file from MinIO", e);
+        }
+    }
+
+    /**
+     * Открытие потока с содержимым файла. Поток нужно закрыть после чтения
+     */
+    public InputStream getFileStream(String filename) {
+        try {
+            // Измеряется только открытие потока, чтение идет у вызывающего кода
+            return timed("open_object", () -> minioClient.getObject(GetObjectArgs.builder()
                     .bucket(bucketName)
                     .object(filename)
-                    .build());
-
-            // Читаем содержимое в массив байтов
-            return response.readAllBytes();
+                    .build()));
         } catch (Exception e) {
             log.error("Error getting file from MinIO: {}", e.getMessage(), e);
             throw new RuntimeException("Could not get file from MinIO", e);
@@ -92,31 +250,180 @@ public class MediaStorageService {
     }
 
     /**
-     * Получение временной ссылки на файл
+     * Чтение первых байт файла (заголовка) ранжированным запросом
+     */
+    public byte[] getFileHeader(String filename) {
+        try {
+            return timed("get_object_header", () -> {
+                try (GetObjectResponse response = minioClient.getObject(GetObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(filename)
+                        .offset(0L)
+                        .length((long) HEADER_CAPTURE_BYTES)
+                        .build())) {
+                    return response.readAllBytes();
+                }
+            });
+        } catch (Exception e) {
+            log.error("Error reading file header from MinIO: {}", e.getMessage(), e);
+            throw new RuntimeException("Could not read file header from MinIO", e);
+        }
+    }
+
+    /**
+     * Начало multipart-загрузки в MinIO. Возвращает uploadId
+     */
+    public String createMultipartUpload(String filename, String contentType) {
+        try {
+            return timed("create_multipart_upload",
+                    () -> multipartMinioClient.createMultipartUpload(bucketName, filename, contentType));
+        } catch (Exception e) {
+            log.error("Error creating multipart upload in MinIO: {}", e.getMessage(), e);
+            throw new RuntimeException("Could not create multipart upload in MinIO", e);
+        }
+    }
+
+    /**
+     * Загрузка одной части multipart-загрузки потоком заданной длины. Возвращает ETag части
+     */
+    public String uploadPart(String filename, String uploadId, int partNumber, InputStream data, long length) {
+        try {
+            return timed("upload_part",
+                    () -> multipartMinioClient.uploadPart(bucketName, filename, uploadId, partNumber, data, length));
+        } catch (Exception e) {
+            log.error("Error uploading part {} to MinIO: {}", partNumber, e.getMessage(), e);
+            throw new RuntimeException("Could not upload part to MinIO", e);
+        }
+    }
+
+    /**
+     * Завершение multipart-загрузки: MinIO собирает объект из частей
+     */
+    public void completeMultipartUpload(String filename, String uploadId, Part[] parts) {
+        try {
+            timed("complete_multipart_upload", () -> {
+                multipartMinioClient.completeMultipartUpload(bucketName, filename, uploadId, parts);
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Error completing multipart upload in MinIO: {}", e.getMessage(), e);
+            throw new RuntimeException("Could not complete multipart upload in MinIO", e);
+        }
+    }
+
+    /**
+     * Отмена multipart-загрузки, MinIO удаляет загруженные части
+     */
+    public void abortMultipartUpload(String filename, String uploadId) {
+        try {
+            timed("abort_multipart_upload", () -> {
+                multipartMinioClient.abortMultipartUpload(bucketName, filename, uploadId);
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Error aborting multipart upload in MinIO: {}", e.getMessage(), e);
+            throw new RuntimeException("Could not abort multipart upload in MinIO", e);
+        }
+    }
+
+    /**
+     * Получение размера файла в MinIO
+     */
+    public long getFileSize(String filename) {
+        try {
+            return timed("stat_object", () -> minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(filename)
+                    .build())).size();
+        } catch (Exception e) {
+            log.error("Error getting file info from MinIO: {}", e.getMessage(), e);
+            throw new RuntimeException("Could not get file info from MinIO", e);
+        }
+    }
+
+    /**
+     * Проверка наличия объекта в MinIO
+     */
+    public boolean fileExists(String filename) {
+        try {
+            timed("stat_object", () -> minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(filename)
+                    .build()));
+            return true;
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return false;
+            }
+            log.error("Error checking file in MinIO: {}", e.getMessage(), e);
+            throw new RuntimeException("Could not check file in MinIO", e);
+        } catch (Exception e) {
+            log.error("Error checking file in MinIO: {}", e.getMessage(), e);
+            throw new RuntimeException("Could not check file in MinIO", e);
+        }
+    }
+
+    /**
+     * Получение временной ссылки на файл.
+     * Ранее подписанная ссылка переиспользуется, пока у нее остается достаточный срок действия
      */
     public String getPresignedUrl(String filename, int expiryMinutes) {
+        PresignKey key = new PresignKey(filename, expiryMinutes);
+        String cached = presignedUrls.getIfPresent(key);
+        if (cached != null) {
+            presignCacheHits.increment();
+            return cached;
+        }
+        presignCacheMisses.increment();
+
         try {
-            return minioClient.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+            String url = presignTimer.recordCallable(() -> minioClient.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
                     .bucket(bucketName)
                     .object(filename)
                     .method(Method.GET)
                     .expiry(expiryMinutes, TimeUnit.MINUTES)
-                    .build());
+                    .build()));
+
+            presignExpiries.add(expiryMinutes);
+            presignedUrls.put(key, url);
+            return url;
         } catch (Exception e) {
             log.error("Error generating presigned URL: {}", e.getMessage(), e);
             throw new RuntimeException("Could not generate presigned URL", e);
         }
     }
 
+    /**
+     * Время, в течение которого ссылку можно выдать повторно: у нее остается достаточный срок действия
+     */
+    private Duration reuseWindow(int expiryMinutes) {
+        Duration ttl = Duration.ofMinutes(expiryMinutes);
+        return Duration.ofMillis((long) (ttl.toMillis() * (1 - presignMinRemainingRatio)));
+    }
+
+    /**
+     * Удаление ссылок на объект со всеми сроками действия
+     */
+    private void invalidatePresignedUrls(Collection<String> filenames) {
+        List<PresignKey> keys = filenames.stream()
+                .flatMap(filename -> presignExpiries.stream().map(expiry -> new PresignKey(filename, expiry)))
+                .toList();
+        presignedUrls.invalidateAll(keys);
+    }
+
     /**
      * Удаление файла из MinIO
      */
     public void deleteFile(String filename) {
         try {
-            minioClient.removeObject(RemoveObjectArgs.builder()
-                    .bucket(bucketName)
-                    .object(filename)
-                    .build());
+            timed("remove_object", () -> {
+                minioClient.removeObject(RemoveObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(filename)
+                        .build());
+                return null;
+            });
+            invalidatePresignedUrls(List.of(filename));
         } catch (Exception e) {
             log.error("Error deleting file from MinIO: {}", e.getMessage(), e);
             throw new RuntimeException("Could not delete file from MinIO", e);
@@ -124,6 +431,45 @@ public class MediaStorageService {
     }
 
 
+    /**
+     * Удаление нескольких файлов из MinIO одним multi-object запросом.
+     * Возвращает ошибки по ключам; пустая карта означает, что удалены все файлы
+     */
+    public Map<String, String> deleteFiles(Collection<String> filenames) {
+        Map<String, String> errors = new HashMap<>();
+        if (filenames.isEmpty()) {
+            return errors;
+        }
+
+        List<DeleteObject> objects = filenames.stream()
+                .distinct()
+                .map(DeleteObject::new)
+                .toList();
+
+        try {
+            // Результаты ленивые: запросы к MinIO выполняются во время обхода, поэтому он входит в замер
+            timed("remove_objects", () -> {
+                Iterable<Result<DeleteError>> results = minioClient.removeObjects(RemoveObjectsArgs.builder()
+                        .bucket(bucketName)
+                        .objects(objects)
+                        .build());
+                for (Result<DeleteError> result : results) {
+                    DeleteError error = result.get();
+                    errors.put(error.objectName(), error.message());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Error deleting files from MinIO: {}", e.getMessage(), e);
+            throw new RuntimeException("Could not delete files from MinIO", e);
+        }
+
+        invalidatePresignedUrls(filenames.stream()
+                .filter(filename -> !errors.containsKey(filename))
+                .toList());
+        return errors;
+    }
+
     /**
      * Добавьте этот метод в MinioService
      */
@@ -131,22 +477,47 @@ public class MediaStorageService {
         try {
             ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
 
-            minioClient.putObject(PutObjectArgs.builder()
+            timed("put_object", () -> minioClient.putObject(PutObjectArgs.builder()
                     .bucket(bucketName)
                     .object(filename)
                     .stream(inputStream, data.length, -1)
                     .contentType(contentType)
-                    .build());
+                    .build()));
         } catch (Exception e) {
             log.error("Error uploading bytes to MinIO: {}", e.getMessage(), e);
             throw new RuntimeException("Could not upload bytes to MinIO", e);
         }
     }
 
+    /**
+     * Вызов MinIO с записью времени в media.storage.operations по имени операции и результату.
+     * Исключение пробрасывается как есть, его обрабатывает вызывающий метод
+     */
+    private <T> T timed(String operation, StorageCall<T> call) throws Exception {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = call.call();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(Timer.builder("media.storage.operations")
+                    .description("MinIO calls by operation and outcome")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    @FunctionalInterface
+    private interface StorageCall<T> {
+        T call() throws Exception;
+    }
+
     /**
      * Генерация уникального имени файла с учетом текущей даты
      */
-    private String generateFileName(String originalFilename) {
+    String generateFileName(String originalFilename) {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy/MM/dd");
         String datePath = LocalDateTime.now().format(formatter);
 
@@ -161,4 +532,10 @@ public class MediaStorageService {
                 UUID.randomUUID(),
                 originalFilename);
     }
+
+    /**
+     * Ключ кеша ссылок: одна и та же ссылка подписывается на разный срок
+     */
+    private record PresignKey(String storageKey, int expiryMinutes) {
+    }
 }
@@ -5,9 +5,14 @@ import org.ithub.mediastorageservice.enums.MediaTagType;
 import org.ithub.mediastorageservice.model.MediaFile;
 import org.ithub.mediastorageservice.model.MediaTag;
 import org.ithub.mediastorageservice.repository.MediaTagRepository;
+import org.ithub.mediastorageservice.search.MediaSearchIndex;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -15,6 +20,7 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class MediaTagService {
     private final MediaTagRepository mediaTagRepository;
+    private final MediaSearchIndex mediaSearchIndex;
 
     public void addTagsToFile(MediaFile mediaFile, Set<String> tags) {
         if (tags != null && !tags.isEmpty()) {
@@ -23,24 +29,27 @@ public class MediaTagService {
                     .map(MediaTag::getName)
                     .collect(Collectors.toSet());
 
-            // Добавляем только новые теги
+            // Добавляем только новые теги, одним saveAll: id из последовательности позволяют пакетную вставку
+            List<MediaTag> newTags = new ArrayList<>();
             for(String tag : tags) {
                 if (!existingTagNames.contains(tag)) {
                     MediaTag mediaTag = new MediaTag();
                     mediaTag.setMediaFile(mediaFile);
                     mediaTag.setName(tag);
                     mediaTag.setType(MediaTagType.MANUAL);
-                    mediaTagRepository.save(mediaTag);
+                    newTags.add(mediaTag);
                 }
             }
+            mediaTagRepository.saveAll(newTags);
+            mediaSearchIndex.addTags(mediaFile.getId(), tags);
         }
     }
 
+    @Transactional
     public void removeTagsFromFile(MediaFile mediaFile, Set<String> tags) {
         if (tags != null && !tags.isEmpty()) {
-            List<MediaTag> tagsToRemove = mediaTagRepository.findByMediaFileIdAndNameIn(
-                    mediaFile.getId(), tags);
-            mediaTagRepository.deleteAll(tagsToRemove);
+            mediaTagRepository.deleteByMediaFileIdInAndNameIn(List.of(mediaFile.getId()), tags);
+            mediaSearchIndex.removeTags(mediaFile.getId(), tags);
         }
     }
 
@@ -55,6 +64,16 @@ public class MediaTagService {
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Получение названий тегов для нескольких файлов одним запросом
+     */
+    public Map<Long, Set<String>> getTagsNamesForFiles(Collection<Long> mediaFileIds) {
+        return mediaTagRepository.findByMediaFileIdIn(mediaFileIds).stream()
+                .collect(Collectors.groupingBy(
+                        tag -> tag.getMediaFile().getId(),
+                        Collectors.mapping(MediaTag::getName, Collectors.toSet())));
+    }
+
     public void deleteAllTagsByMediaFileId(Long mediaFileId) {
         mediaTagRepository.deleteByMediaFileId(mediaFileId);
     }
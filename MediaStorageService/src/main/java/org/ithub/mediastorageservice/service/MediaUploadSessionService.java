@@ -0,0 +1,299 @@
+package org.ithub.mediastorageservice.service;
+
+import io.minio.messages.Part;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.dto.MediaUploadPartDTO;
+import org.ithub.mediastorageservice.dto.MediaUploadSessionCreateRequestDTO;
+import org.ithub.mediastorageservice.dto.MediaUploadSessionDTO;
+import org.ithub.mediastorageservice.dto.StoredObjectDTO;
+import org.ithub.mediastorageservice.enums.UploadSessionStatus;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.model.MediaUploadPart;
+import org.ithub.mediastorageservice.model.MediaUploadSession;
+import org.ithub.mediastorageservice.repository.MediaUploadPartRepository;
+import org.ithub.mediastorageservice.repository.MediaUploadSessionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Возобновляемая загрузка больших файлов частями через multipart upload в MinIO.
+ * Части можно загружать параллельно и в любом порядке, состояние сессии хранится в БД,
+ * запись MediaFile создается только после завершения загрузки
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaUploadSessionService {
+    private final MediaUploadSessionRepository sessionRepository;
+    private final MediaUploadPartRepository partRepository;
+    private final MediaStorageService mediaStorageService;
+    private final MediaFileService mediaFileService;
+
+    // Ограничения S3: минимальный размер части (кроме последней) и максимальный номер части
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PART_NUMBER = 10000;
+
+    @Value("${media.upload.max-part-size:67108864}")
+    private long maxPartSize;
+
+    // Сессия без новых частей дольше этого срока считается брошенной
+    @Value("${media.upload.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    /**
+     * Начало сессии загрузки
+     */
+    public MediaUploadSessionDTO createSession(MediaUploadSessionCreateRequestDTO request) {
+        String storageKey = mediaStorageService.generateFileName(request.getOriginalFilename());
+        String uploadId = mediaStorageService.createMultipartUpload(storageKey, request.getContentType());
+
+        MediaUploadSession session = new MediaUploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setUploadId(uploadId);
+        session.setStorageKey(storageKey);
+        session.setOriginalFilename(request.getOriginalFilename());
+        session.setContentType(request.getContentType());
+        session.setExpectedSize(request.getSize());
+
+        session = sessionRepository.save(session);
+        log.info("Upload session {} created for {}", session.getId(), storageKey);
+        return convertToDTO(session, List.of());
+    }
+
+    /**
+     * Состояние сессии со списком уже загруженных частей, используется для продолжения загрузки
+     */
+    public MediaUploadSessionDTO getSession(String sessionId) {
+        MediaUploadSession session = findSession(sessionId);
+        return convertToDTO(session, partRepository.findBySessionIdOrderByPartNumber(sessionId));
+    }
+
+    /**
+     * Загрузка одной части потоком, length - Content-Length запроса.
+     * Повторная загрузка части с тем же номером заменяет предыдущую
+     */
+    public MediaUploadPartDTO uploadPart(String sessionId, int partNumber, InputStream content, long length) {
+        if (partNumber < 1 || partNumber > MAX_PART_NUMBER) {
+            throw new IllegalArgumentException("Part number must be between 1 and " + MAX_PART_NUMBER);
+        }
+        // Часть передается в MinIO без буферизации, поэтому размер нужен до начала чтения
+        if (length < 0) {
+            throw new IllegalArgumentException("Content-Length is required for part upload");
+        }
+        if (length == 0) {
+            throw new IllegalArgumentException("Part must not be empty");
+        }
+        if (length > maxPartSize) {
+            throw new IllegalArgumentException("Part size exceeds limit of " + maxPartSize + " bytes");
+        }
+        MediaUploadSession session = findSession(sessionId);
+        requireActive(session);
+
+        String etag = mediaStorageService.uploadPart(session.getStorageKey(), session.getUploadId(),
+                partNumber, content, length);
+        partRepository.upsert(sessionId, partNumber, etag, length);
+
+        log.debug("Part {} of upload session {} stored, size: {}", partNumber, sessionId, length);
+        return MediaUploadPartDTO.builder()
+                .partNumber(partNumber)
+                .etag(etag)
+                .size(length)
+                .build();
+    }
+
+    /**
+     * Завершение загрузки: сборка объекта в MinIO и создание записи MediaFile.
+     * Сессия сначала атомарно переводится в COMPLETING, поэтому параллельный вызов не соберет объект второй раз.
+     * Повторный вызов для завершенной сессии возвращает тот же файл
+     */
+    public MediaFile completeSession(String sessionId, String description, Set<String> tags) throws IOException {
+        MediaUploadSession session = findSession(sessionId);
+        if (session.getStatus() == UploadSessionStatus.COMPLETED) {
+            return mediaFileService.getMediaFile(session.getMediaFileId());
+        }
+        requireActive(session);
+
+        List<MediaUploadPart> parts = partRepository.findBySessionIdOrderByPartNumber(sessionId);
+        validateParts(parts);
+
+        if (sessionRepository.transition(sessionId, UploadSessionStatus.ACTIVE, UploadSessionStatus.COMPLETING,
+                LocalDateTime.now()) == 0) {
+            // Сессию завершил или отменил параллельный запрос
+            MediaUploadSession current = findSession(sessionId);
+            if (current.getStatus() == UploadSessionStatus.COMPLETED) {
+                return mediaFileService.getMediaFile(current.getMediaFileId());
+            }
+            throw new IllegalStateException("Upload session " + sessionId + " is " + current.getStatus());
+        }
+
+        MediaFile mediaFile;
+        try {
+            mediaFile = assemble(session, parts, description, tags);
+        } catch (RuntimeException e) {
+            // Сессия снова принимает части и завершение можно повторить
+            sessionRepository.transition(sessionId, UploadSessionStatus.COMPLETING, UploadSessionStatus.ACTIVE,
+                    LocalDateTime.now());
+            throw e;
+        }
+
+        session.setStatus(UploadSessionStatus.COMPLETED);
+        session.setMediaFileId(mediaFile.getId());
+        sessionRepository.save(session);
+
+        log.info("Upload session {} completed, media file id: {}", sessionId, mediaFile.getId());
+        return mediaFile;
+    }
+
+    /**
+     * Сборка объекта из частей и регистрация файла. Если объект уже собран предыдущей попыткой,
+     * а файл не создан (ошибка после completeMultipartUpload), MinIO больше не знает uploadId -
+     * в этом случае используется собранный объект
+     */
+    private MediaFile assemble(MediaUploadSession session, List<MediaUploadPart> parts,
+                               String description, Set<String> tags) throws IOException {
+        String storageKey = session.getStorageKey();
+        Part[] minioParts = parts.stream()
+                .map(part -> new Part(part.getPartNumber(), part.getEtag()))
+                .toArray(Part[]::new);
+        try {
+            mediaStorageService.completeMultipartUpload(storageKey, session.getUploadId(), minioParts);
+        } catch (RuntimeException e) {
+            if (!mediaStorageService.fileExists(storageKey)) {
+                throw e;
+            }
+            log.info("Object {} of upload session {} was already assembled", storageKey, session.getId());
+        }
+
+        // Размер и заголовок читаем из собранного объекта; хеш для multipart-загрузки не считается
+        StoredObjectDTO storedObject = StoredObjectDTO.builder()
+                .storageKey(storageKey)
+                .size(mediaStorageService.getFileSize(storageKey))
+                .header(mediaStorageService.getFileHeader(storageKey))
+                .build();
+
+        return mediaFileService.registerMediaFile(session.getOriginalFilename(), session.getContentType(),
+                storedObject, () -> mediaStorageService.getFileStream(storageKey), description, tags);
+    }
+
+    /**
+     * Отмена загрузки с удалением загруженных частей
+     */
+    public void abortSession(String sessionId) {
+        MediaUploadSession session = findSession(sessionId);
+        if (session.getStatus() == UploadSessionStatus.ABORTED) {
+            return;
+        }
+        requireActive(session);
+
+        if (sessionRepository.transition(sessionId, UploadSessionStatus.ACTIVE, UploadSessionStatus.ABORTED,
+                LocalDateTime.now()) == 0) {
+            MediaUploadSession current = findSession(sessionId);
+            if (current.getStatus() != UploadSessionStatus.ABORTED) {
+                throw new IllegalStateException("Upload session " + sessionId + " is " + current.getStatus());
+            }
+            return;
+        }
+
+        mediaStorageService.abortMultipartUpload(session.getStorageKey(), session.getUploadId());
+        partRepository.deleteBySessionId(sessionId);
+        log.info("Upload session {} aborted", sessionId);
+    }
+
+    /**
+     * Очистка брошенных сессий: загрузка в MinIO отменяется, иначе ее части занимают место бессрочно.
+     * Сессии, оставшиеся в COMPLETING после падения экземпляра, возвращаются в ACTIVE,
+     * чтобы клиент мог повторить завершение
+     */
+    @Scheduled(fixedDelayString = "${media.upload.cleanup-interval-ms:3600000}",
+            initialDelayString = "${media.upload.cleanup-interval-ms:3600000}")
+    public void expireAbandonedSessions() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime cutoff = now.minusHours(sessionTtlHours);
+
+        for (MediaUploadSession session : sessionRepository.findInactiveSince(UploadSessionStatus.COMPLETING, cutoff)) {
+            if (sessionRepository.transition(session.getId(), UploadSessionStatus.COMPLETING, UploadSessionStatus.ACTIVE, now) > 0) {
+                log.warn("Upload session {} was stuck in COMPLETING, returned to ACTIVE", session.getId());
+            }
+        }
+
+        int expired = 0;
+        for (MediaUploadSession session : sessionRepository.findInactiveSince(UploadSessionStatus.ACTIVE, cutoff)) {
+            // Сессию могли завершить между выборкой и переходом
+            if (sessionRepository.transition(session.getId(), UploadSessionStatus.ACTIVE, UploadSessionStatus.EXPIRED, now) == 0) {
+                continue;
+            }
+            try {
+                mediaStorageService.abortMultipartUpload(session.getStorageKey(), session.getUploadId());
+            } catch (RuntimeException e) {
+                log.warn("Could not abort multipart upload of expired session {}: {}", session.getId(), e.getMessage());
+            }
+            partRepository.deleteBySessionId(session.getId());
+            expired++;
+        }
+        if (expired > 0) {
+            log.info("Expired {} abandoned upload sessions", expired);
+        }
+    }
+
+    private void validateParts(List<MediaUploadPart> parts) {
+        if (parts.isEmpty()) {
+            throw new IllegalArgumentException("No parts uploaded");
+        }
+        for (int i = 0; i < parts.size(); i++) {
+            MediaUploadPart part = parts.get(i);
+            // Номера частей должны идти без пропусков
+            if (part.getPartNumber() != i + 1) {
+                throw new IllegalArgumentException("Missing part number " + (i + 1));
+            }
+            if (i < parts.size() - 1 && part.getSize() < MIN_PART_SIZE) {
+                throw new IllegalArgumentException("Part " + part.getPartNumber()
+                        + " is smaller than minimum part size of " + MIN_PART_SIZE + " bytes");
+            }
+        }
+    }
+
+    private MediaUploadSession findSession(String sessionId) {
+        return sessionRepository.findById(sessionId)
+                .orElseThrow(() -> new EntityNotFoundException("Upload session not found with id: " + sessionId));
+    }
+
+    private void requireActive(MediaUploadSession session) {
+        if (session.getStatus() != UploadSessionStatus.ACTIVE) {
+            throw new IllegalStateException("Upload session " + session.getId() + " is " + session.getStatus());
+        }
+    }
+
+    private MediaUploadSessionDTO convertToDTO(MediaUploadSession session, List<MediaUploadPart> parts) {
+        return MediaUploadSessionDTO.builder()
+                .sessionId(session.getId())
+                .originalFilename(session.getOriginalFilename())
+                .contentType(session.getContentType())
+                .expectedSize(session.getExpectedSize())
+                .status(session.getStatus().name())
+                .minPartSize(MIN_PART_SIZE)
+                .maxPartSize(maxPartSize)
+                .parts(parts.stream().map(this::convertToDTO).toList())
+                .uploadedBytes(parts.stream().mapToLong(MediaUploadPart::getSize).sum())
+                .mediaFileId(session.getMediaFileId())
+                .createdAt(session.getCreatedAt())
+                .build();
+    }
+
+    private MediaUploadPartDTO convertToDTO(MediaUploadPart part) {
+        return MediaUploadPartDTO.builder()
+                .partNumber(part.getPartNumber())
+                .etag(part.getEtag())
+                .size(part.getSize())
+                .build();
+    }
+}
@@ -0,0 +1,97 @@
+package org.ithub.mediastorageservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Кеш небольших вариантов (миниатюр) в памяти вне heap.
+ * Содержимое хранится в direct-буферах и не нагружает GC, вытеснение W-TinyLFU (Caffeine)
+ * с ограничением по суммарному размеру. Параллельные промахи по одному ключу
+ * приводят к одной загрузке из MinIO
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaVariantMemoryCacheService {
+    private final MediaStorageService mediaStorageService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${media.cache.memory.enabled:true}")
+    private boolean enabled;
+
+    // Ограничение памяти вне heap под кеш
+    @Value("${media.cache.memory.max-bytes:67108864}")
+    private long maxBytes;
+
+    // Варианты больше этого размера в память не попадают
+    @Value("${media.cache.memory.max-entry-size:262144}")
+    private long maxEntrySize;
+
+    private Cache<String, ByteBuffer> cache;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, ByteBuffer buffer) -> buffer.capacity())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "media.variants.memory");
+        Gauge.builder("media.variants.memory.size", cache,
+                        c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Содержимое объекта из кеша, при промахе загружается из MinIO.
+     * Пустой результат означает, что объект нужно отдать в обход кеша
+     */
+    public Optional<ByteBuffer> get(String storageKey, long size) {
+        if (!enabled || size <= 0 || size > maxEntrySize) {
+            return Optional.empty();
+        }
+
+        try {
+            ByteBuffer buffer = cache.get(storageKey, this::load);
+            // Каждому читателю своя позиция и граница
+            return Optional.of(buffer.asReadOnlyBuffer());
+        } catch (RuntimeException e) {
+            log.warn("Could not cache variant {} in memory: {}", storageKey, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Удаление объектов из кеша
+     */
+    public void invalidate(Collection<String> storageKeys) {
+        if (enabled) {
+            cache.invalidateAll(storageKeys);
+        }
+    }
+
+    private ByteBuffer load(String storageKey) {
+        byte[] data = mediaStorageService.getFile(storageKey);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        return buffer;
+    }
+}
@@ -1,18 +1,36 @@
 package org.ithub.mediastorageservice.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.config.VariantProfile;
+import org.ithub.mediastorageservice.config.VariantProfileProperties;
+import org.ithub.mediastorageservice.dto.MediaContentDTO;
+import org.ithub.mediastorageservice.enums.FitMode;
 import org.ithub.mediastorageservice.enums.MediaStatus;
+import org.ithub.mediastorageservice.enums.MediaType;
 import org.ithub.mediastorageservice.model.MediaFile;
 import org.ithub.mediastorageservice.model.MediaVariant;
 import org.ithub.mediastorageservice.repository.MediaFileRepository;
 import org.ithub.mediastorageservice.repository.MediaVariantRepository;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
+import org.ithub.mediastorageservice.search.MediaSearchIndex;
+import org.ithub.mediastorageservice.util.SingleFlight;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.awt.image.BufferedImage;
+import java.time.ZoneId;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -22,34 +40,57 @@ public class MediaVariantService {
     private final MediaStorageService mediaStorageService;
     private final ImageProcessingService imageProcessingService;
     private final MediaFileRepository mediaFileRepository;
+    private final MediaVariantMemoryCacheService mediaVariantMemoryCacheService;
+    private final MediaSearchIndex mediaSearchIndex;
+    private final MeterRegistry meterRegistry;
+    private final VariantProfileProperties variantProfileProperties;
+    private final MediaBlobService mediaBlobService;
+    private final TransactionTemplate transactionTemplate;
 
+    // Размер варианта по запросу: ширина x высота
+    private static final Pattern ON_DEMAND_SIZE = Pattern.compile("(\\d{1,5})x(\\d{1,5})");
+
+    // Размеры, которые можно создавать по запросу, чтобы число вариантов было ограничено
+    @Value("${media.variants.on-demand.allowed-sizes:64x64,150x150,300x300,600x600,1200x1200}")
+    private Set<String> onDemandAllowedSizes;
+
+    // Параллельные запросы одного и того же варианта запускают одно масштабирование
+    private final SingleFlight<String, MediaVariant> variantGeneration = new SingleFlight<>();
 
     /**
      * Обработка вариантов изображения
      */
     public void processImageVariants(MediaFile mediaFile) {
         try {
-            // Получаем оригинальное изображение из хранилища
-            byte[] imageData = mediaStorageService.getFile(mediaFile.getStorageKey());
+            // Варианты прерванной обработки (рестарт, shutdownNow) создаются заново
+            discardVariants(mediaFile.getId());
 
-            // Создаем миниатюру
-            MediaVariant thumbnailVariant = imageProcessingService.createThumbnail(mediaFile, imageData, 150, 150);
-
-            // Создаем вариант среднего размера
-            MediaVariant mediumVariant = imageProcessingService.createResizedVariant(mediaFile, imageData, 600, 600, "medium");
+            // Получаем оригинальное изображение из хранилища и декодируем его один раз
+            byte[] imageData = mediaStorageService.getFile(mediaFile.getStorageKey());
+            BufferedImage originalImage = imageProcessingService.decodeImage(imageData);
 
-            // Создаем оптимизированные варианты для социальных сетей
-            MediaVariant instagramVariant = imageProcessingService.optimizeForSocialNetwork(mediaFile, imageData, "instagram");
-            MediaVariant vkVariant = imageProcessingService.optimizeForSocialNetwork(mediaFile, imageData, "telegram");
+            // Создаем варианты из настроек; те, что были бы больше оригинала, ссылаются на оригинал
+            List<VariantProfile> profiles = variantProfileProperties.profilesFor(mediaFile.getMediaType());
+            imageProcessingService.createVariants(mediaFile, originalImage, profiles);
 
             // Обновляем статус файла на READY
             mediaFile.setStatus(MediaStatus.READY);
             mediaFileRepository.save(mediaFile);
+            mediaSearchIndex.updateStatus(mediaFile.getId(), MediaStatus.READY);
+            meterRegistry.counter("media.status.transitions", "status", MediaStatus.READY.name()).increment();
 
         } catch (Exception e) {
             log.error("Error processing image variants for mediaId {}: {}", mediaFile.getId(), e.getMessage(), e);
+            try {
+                // Часть вариантов могла создаться до ошибки
+                discardVariants(mediaFile.getId());
+            } catch (Exception cleanupError) {
+                log.warn("Could not remove partial variants for mediaId {}: {}", mediaFile.getId(), cleanupError.getMessage());
+            }
             mediaFile.setStatus(MediaStatus.ERROR);
             mediaFileRepository.save(mediaFile);
+            mediaSearchIndex.updateStatus(mediaFile.getId(), MediaStatus.ERROR);
+            meterRegistry.counter("media.status.transitions", "status", MediaStatus.ERROR.name()).increment();
         }
     }
 
@@ -70,29 +111,130 @@ public class MediaVariantService {
     }
 
     /**
-     *  Получение содержимого варианта
+     * Получение вариантов для нескольких файлов одним запросом
      */
-    public Resource getVariantContent(Long mediaId, String variantName) {
-        MediaVariant variant = mediaVariantRepository.findByMediaFileIdAndVariantName(mediaId, variantName)
-                .orElseThrow(() -> new EntityNotFoundException(
-                        "Variant " + variantName + " not found for media with id: " + mediaId));
+    public Map<Long, List<MediaVariant>> getAllVariantsByFileIds(Collection<Long> mediaFileIds) {
+        return mediaVariantRepository.findByMediaFileIdIn(mediaFileIds).stream()
+                .collect(Collectors.groupingBy(variant -> variant.getMediaFile().getId()));
+    }
 
-        // Получаем файл из хранилища
-        byte[] content = mediaStorageService.getFile(variant.getStorageKey());
+    /**
+     * Получение описания содержимого варианта для потоковой отдачи
+     */
+    public MediaContentDTO getVariantContent(Long mediaId, String variantName) {
+        return toContent(getVariantByNameAndFileId(mediaId, variantName));
+    }
 
-        // Создаем ресурс для возврата
-        return new ByteArrayResource(content);
+    /**
+     * Получение варианта по имени или по размеру вида 300x200.
+     * Вариант разрешенного размера создается при первом запросе и дальше отдается из хранилища
+     */
+    public MediaContentDTO getVariantContent(Long mediaId, String variantName, String mode) {
+        Matcher size = ON_DEMAND_SIZE.matcher(variantName);
+        if (!size.matches()) {
+            return getVariantContent(mediaId, variantName);
+        }
+        if (!onDemandAllowedSizes.contains(variantName)) {
+            throw new IllegalArgumentException("Variant size " + variantName + " is not allowed");
+        }
+
+        FitMode fit = parseFitMode(mode);
+        String name = fit == FitMode.FIT ? variantName : variantName + "-" + fit.name().toLowerCase();
+        int width = Integer.parseInt(size.group(1));
+        int height = Integer.parseInt(size.group(2));
+
+        MediaVariant variant = mediaVariantRepository.findByMediaFileIdAndVariantName(mediaId, name)
+                .orElseGet(() -> variantGeneration.execute(mediaId + "/" + name,
+                        () -> generateVariant(mediaId, new VariantProfile(name, width, height, fit))));
+        return toContent(variant);
     }
 
     /**
-     * Удаление всех вариантов файла
+     * Создание варианта по запросу. Повторная проверка нужна для запросов,
+     * которые пришли сразу после завершения предыдущей генерации
      */
-    public void deleteVariantsByMediaFileId(Long mediaFileId) {
-        List<MediaVariant> variants = mediaVariantRepository.findByMediaFileId(mediaFileId);
-        for (MediaVariant variant : variants) {
-            mediaStorageService.deleteFile(variant.getStorageKey());
+    private MediaVariant generateVariant(Long mediaId, VariantProfile profile) {
+        Optional<MediaVariant> existing = mediaVariantRepository.findByMediaFileIdAndVariantName(mediaId, profile.getName());
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+
+        MediaFile mediaFile = mediaFileRepository.findById(mediaId)
+                .orElseThrow(() -> new EntityNotFoundException("MediaFile not found with id: " + mediaId));
+        if (mediaFile.getMediaType() != MediaType.IMAGE) {
+            throw new IllegalArgumentException("Variants are only available for images");
+        }
+
+        log.info("Generating on-demand variant {} for mediaId {}", profile.getName(), mediaId);
+        byte[] imageData = mediaStorageService.getFile(mediaFile.getStorageKey());
+        BufferedImage originalImage = imageProcessingService.decodeImage(imageData);
+        return imageProcessingService.createOnDemandVariant(mediaFile, originalImage, profile);
+    }
+
+    private FitMode parseFitMode(String mode) {
+        if (mode == null || mode.isBlank()) {
+            return FitMode.FIT;
+        }
+        try {
+            return FitMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported mode: " + mode + ", expected fit or crop");
         }
+    }
+
+    private MediaContentDTO toContent(MediaVariant variant) {
+        return MediaContentDTO.builder()
+                .storageKey(variant.getStorageKey())
+                .contentType(variant.getContentType() != null ? variant.getContentType() : "image/jpeg")
+                .size(variant.getSize())
+                .lastModified(variant.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant())
+                .memoryCacheable(true)
+                .build();
+    }
+
+    /**
+     * Удаление записей о вариантах файла. Возвращает ключи вариантов в хранилище:
+     * объекты удаляет вызывающий код после освобождения ссылок, т.к. они могут быть общими
+     */
+    @Transactional
+    public List<String> deleteVariantsByMediaFileId(Long mediaFileId) {
+        List<String> storageKeys = mediaVariantRepository.findByMediaFileId(mediaFileId).stream()
+                .map(MediaVariant::getStorageKey)
+                .toList();
 
         mediaVariantRepository.deleteByMediaFileId(mediaFileId);
+        mediaVariantMemoryCacheService.invalidate(storageKeys);
+        return storageKeys;
+    }
+
+    /**
+     * Удаление всех вариантов файла вместе со ссылками на их объекты.
+     * Объекты, на которые больше никто не ссылается, удаляются из хранилища после коммита
+     */
+    private void discardVariants(Long mediaFileId) {
+        List<String> unreferencedKeys = transactionTemplate.execute(status ->
+                mediaBlobService.release(deleteVariantsByMediaFileId(mediaFileId)));
+        mediaBlobService.deleteObjects(unreferencedKeys);
+    }
+
+    /**
+     * Копирование записей о вариантах другого файла с тем же содержимым.
+     * Объекты в хранилище общие, ссылки на них должны быть уже взяты
+     */
+    public List<MediaVariant> copyVariants(List<MediaVariant> sourceVariants, MediaFile target) {
+        List<MediaVariant> copies = sourceVariants.stream()
+                .map(source -> {
+                    MediaVariant copy = new MediaVariant();
+                    copy.setMediaFile(target);
+                    copy.setVariantName(source.getVariantName());
+                    copy.setStorageKey(source.getStorageKey());
+                    copy.setWidth(source.getWidth());
+                    copy.setHeight(source.getHeight());
+                    copy.setSize(source.getSize());
+                    copy.setContentType(source.getContentType());
+                    return copy;
+                })
+                .toList();
+        return mediaVariantRepository.saveAll(copies);
     }
 }
@@ -0,0 +1,137 @@
+package org.ithub.mediastorageservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ithub.mediastorageservice.enums.MediaStatus;
+import org.ithub.mediastorageservice.enums.MediaType;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.repository.MediaFileRepository;
+import org.ithub.mediastorageservice.search.MediaSearchIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая обработка вариантов изображений.
+ * Загрузка возвращает ответ сразу после сохранения оригинала (статус PROCESSING),
+ * а варианты создаются воркерами из ограниченной очереди.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VariantProcessingPipeline {
+    private final MediaVariantService mediaVariantService;
+    private final MediaFileRepository mediaFileRepository;
+    private final MediaSearchIndex mediaSearchIndex;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${media.variants.workers:2}")
+    private int workers;
+
+    @Value("${media.variants.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Value("${media.variants.shutdown-timeout-seconds:30}")
+    private int shutdownTimeoutSeconds;
+
+    private ThreadPoolExecutor executor;
+    private Counter completedCounter;
+    private Counter failedCounter;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void start() {
+        executor = new ThreadPoolExecutor(
+                workers, workers,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("variant-worker-"),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("media.variants.queue.depth", executor, e -> e.getQueue().size())
+                .description("Number of media files waiting for variant processing")
+                .register(meterRegistry);
+        Gauge.builder("media.variants.queue.capacity", executor, e -> queueCapacity)
+                .register(meterRegistry);
+        Gauge.builder("media.variants.workers.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+
+        completedCounter = meterRegistry.counter("media.variants.tasks", "result", "completed");
+        failedCounter = meterRegistry.counter("media.variants.tasks", "result", "failed");
+        rejectedCounter = meterRegistry.counter("media.variants.tasks", "result", "rejected");
+
+        log.info("Variant processing pipeline started: workers={}, queueCapacity={}", workers, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+            // Незавершенные файлы останутся в PROCESSING и будут поставлены в очередь при следующем старте
+            List<Runnable> dropped = executor.shutdownNow();
+            log.warn("Variant pipeline stopped with {} pending tasks", dropped.size());
+        }
+    }
+
+    /**
+     * Постановка файла в очередь на создание вариантов
+     */
+    public void submit(MediaFile mediaFile) {
+        long mediaId = mediaFile.getId();
+        try {
+            executor.execute(() -> process(mediaId));
+        } catch (RejectedExecutionException e) {
+            // Очередь переполнена: не блокируем загрузку, помечаем файл ошибкой
+            log.warn("Variant queue is full, media {} will not be processed", mediaId);
+            rejectedCounter.increment();
+            mediaFile.setStatus(MediaStatus.ERROR);
+            mediaFileRepository.save(mediaFile);
+            mediaSearchIndex.updateStatus(mediaId, MediaStatus.ERROR);
+            meterRegistry.counter("media.status.transitions", "status", MediaStatus.ERROR.name()).increment();
+        }
+    }
+
+    /**
+     * Повторная постановка в очередь файлов, которые остались в PROCESSING (например, после рестарта)
+     */
+    public void resubmitPending() {
+        List<MediaFile> pending = mediaFileRepository.findByStatus(MediaStatus.PROCESSING).stream()
+                .filter(mediaFile -> mediaFile.getMediaType() == MediaType.IMAGE)
+                .toList();
+        if (!pending.isEmpty()) {
+            log.info("Resubmitting {} media files for variant processing", pending.size());
+        }
+        pending.forEach(this::submit);
+    }
+
+    /**
+     * Обработка одного файла в потоке воркера
+     */
+    private void process(long mediaId) {
+        // Файл могли удалить, пока он ждал в очереди
+        MediaFile mediaFile = mediaFileRepository.findById(mediaId).orElse(null);
+        if (mediaFile == null) {
+            log.debug("Media {} was deleted before variant processing", mediaId);
+            return;
+        }
+
+        mediaVariantService.processImageVariants(mediaFile);
+
+        if (mediaFile.getStatus() == MediaStatus.READY) {
+            completedCounter.increment();
+        } else {
+            failedCounter.increment();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.ithub.mediastorageservice.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Поток-обертка, который за один проход по данным считает размер, SHA-256
+ * и сохраняет первые байты (заголовок) для последующего анализа формата.
+ * Память фиксирована и не зависит от размера потока.
+ */
+public class InspectingInputStream extends FilterInputStream {
+    private final MessageDigest digest;
+    private final byte[] header;
+    private int headerLength;
+    private long count;
+    private String sha256Hex;
+
+    public InspectingInputStream(InputStream in, int headerCapacity) {
+        super(in);
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        this.header = new byte[headerCapacity];
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            digest.update((byte) b);
+            if (headerLength < header.length) {
+                header[headerLength++] = (byte) b;
+            }
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            digest.update(b, off, n);
+            if (headerLength < header.length) {
+                int toCopy = Math.min(n, header.length - headerLength);
+                System.arraycopy(b, off, header, headerLength, toCopy);
+                headerLength += toCopy;
+            }
+            count += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Пропуск сломал бы контрольную сумму, поэтому читаем данные честно
+        byte[] buffer = new byte[8192];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // mark/reset не поддерживаются
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Количество прочитанных байт
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * SHA-256 прочитанных данных в hex. Вызывать после полного чтения потока.
+     */
+    public String getSha256Hex() {
+        if (sha256Hex == null) {
+            sha256Hex = HexFormat.of().formatHex(digest.digest());
+        }
+        return sha256Hex;
+    }
+
+    /**
+     * Первые байты потока (не больше headerCapacity)
+     */
+    public byte[] getHeader() {
+        return Arrays.copyOf(header, headerLength);
+    }
+}
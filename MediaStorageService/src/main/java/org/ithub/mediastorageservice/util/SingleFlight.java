@@ -0,0 +1,85 @@
+package org.ithub.mediastorageservice.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одинаковых параллельных вызовов: пока вычисление по ключу выполняется,
+ * остальные вызовы с тем же ключом ждут его результат, а не запускают свое.
+ * Результат не кешируется: после завершения следующий вызов выполняется заново
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    // Вызовы, которые выполнили вычисление сами, и вызовы, которые дождались чужого
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Выполнение action или ожидание уже выполняющегося вызова с тем же ключом.
+     * Ошибку вычисления получают все ожидающие. Прерывание ожидающего потока
+     * отменяет только его ожидание, общее вычисление продолжается для остальных
+     */
+    public V execute(K key, Supplier<V> action) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        executions.increment();
+        try {
+            V value = action.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Число вычислений, выполненных самостоятельно
+     */
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    /**
+     * Число вызовов, которые получили результат чужого вычисления
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Число ключей, по которым сейчас идет вычисление
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for in-flight call");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
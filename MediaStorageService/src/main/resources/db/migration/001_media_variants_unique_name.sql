@@ -0,0 +1,26 @@
+-- Уникальность имени варианта в пределах файла (uk_media_variant_media_name).
+-- Прерванная обработка могла оставить повторяющиеся записи (media_id, variant_name),
+-- из-за которых поиск варианта по имени падает с IncorrectResultSize.
+-- Скрипт выполняется вручную один раз, до запуска версии с ограничением.
+
+begin;
+
+-- Остается самая новая запись каждого варианта; ключ у повторов тот же,
+-- поэтому у объекта снимаются ссылки, которые держали удаленные записи
+with removed as (
+    delete from media_variants v
+    using media_variants newer
+    where newer.media_id = v.media_id
+      and newer.variant_name = v.variant_name
+      and newer.id > v.id
+    returning v.storage_key
+)
+update media_blobs b
+set ref_count = b.ref_count - r.removed_count
+from (select storage_key, count(*) as removed_count from removed group by storage_key) r
+where b.storage_key = r.storage_key;
+
+alter table media_variants
+    add constraint uk_media_variant_media_name unique (media_id, variant_name);
+
+commit;
@@ -0,0 +1,29 @@
+-- Теги: уникальность (media_id, name) для insertTags ... on conflict do nothing
+-- и последовательность media_tags_seq вместо IDENTITY (allocationSize = 50 в MediaTag).
+-- Скрипт выполняется вручную один раз, до запуска версии с пакетной вставкой тегов.
+
+begin;
+
+-- Повторно добавленные теги: остается самая ранняя запись
+delete from media_tags t
+using media_tags earlier
+where earlier.media_id = t.media_id
+  and earlier.name = t.name
+  and earlier.id < t.id;
+
+alter table media_tags
+    add constraint uk_media_tag_media_name unique (media_id, name);
+
+-- Шаг совпадает с allocationSize: Hibernate берет из последовательности начало блока из 50 id.
+-- Начальное значение - после существующих id, поэтому задается динамически
+do $$
+begin
+    execute format('create sequence media_tags_seq increment by 50 start with %s',
+                   (select coalesce(max(id), 0) + 1 from media_tags));
+end
+$$;
+
+-- id теперь всегда задает приложение
+alter table media_tags alter column id drop identity if exists;
+
+commit;
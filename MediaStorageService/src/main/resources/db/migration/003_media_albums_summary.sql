@@ -0,0 +1,25 @@
+-- Сводка альбомов (item_count, preview_media_ids) для альбомов, созданных до ее появления,
+-- и превью из самых новых файлов вместо файлов с наименьшими id.
+-- Скрипт выполняется вручную один раз, до запуска версии, которая не заполняет сводку при чтении.
+
+begin;
+
+-- Сначала блокируем альбомы, как refreshSummaries: следующий запрос видит файлы,
+-- добавленные транзакциями, которые успели зафиксироваться до блокировки
+select id from media_albums order by id for update;
+
+update media_albums a
+set item_count = (select count(*) from media_album_items i where i.album_id = a.id),
+    preview_media_ids = coalesce((
+        select string_agg(p.media_id::text, ',' order by p.created_at desc, p.media_id desc)
+        from (
+            select i.media_id, f.created_at
+            from media_album_items i
+            join media_files f on f.id = i.media_id
+            where i.album_id = a.id
+            order by f.created_at desc, f.id desc
+            limit 4
+        ) p
+    ), '');
+
+commit;
@@ -0,0 +1,373 @@
+package org.ithub.mediastorageservice.image;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Разбор заголовков на байтовых фикстурах: каждый формат, Exif в обоих порядках байт,
+ * SOF после большого APP1 и обрезанные заголовки
+ */
+class ImageProbeTest {
+    private final ImageProbe imageProbe = new ImageProbe();
+
+    @Test
+    void jpegSkipsFillBytesAndStandaloneMarkers() {
+        byte[] jpeg = new Fixture()
+                .bytes(0xFF, 0xD8)
+                .bytes(0xFF, 0xFF)                 // заполняющий байт перед маркером
+                .bytes(0xFF, 0xD0)                 // RST0 без длины
+                .segment(0xE0, "JFIF\0".getBytes(StandardCharsets.ISO_8859_1))
+                .bytes(sof(640, 480, 3))
+                .toArray();
+
+        ImageHeaderInfo info = imageProbe.probe(jpeg).orElseThrow();
+
+        assertThat(info.getFormat()).isEqualTo("jpeg");
+        assertThat(info.getWidth()).isEqualTo(640);
+        assertThat(info.getHeight()).isEqualTo(480);
+        assertThat(info.getColorModel()).isEqualTo("YCbCr");
+        assertThat(info.getOrientation()).isEqualTo(1);
+    }
+
+    @Test
+    void jpegReadsLittleEndianExifOrientation() {
+        byte[] jpeg = new Fixture()
+                .bytes(0xFF, 0xD8)
+                .segment(0xE1, exif(ByteOrder.LITTLE_ENDIAN, 6))
+                .bytes(sof(4000, 3000, 3))
+                .toArray();
+
+        ImageHeaderInfo info = imageProbe.probe(jpeg).orElseThrow();
+
+        assertThat(info.getWidth()).isEqualTo(4000);
+        assertThat(info.getHeight()).isEqualTo(3000);
+        assertThat(info.getOrientation()).isEqualTo(6);
+    }
+
+    @Test
+    void jpegReadsBigEndianExifOrientation() {
+        byte[] jpeg = new Fixture()
+                .bytes(0xFF, 0xD8)
+                .segment(0xE1, exif(ByteOrder.BIG_ENDIAN, 8))
+                .bytes(sof(1200, 1600, 1))
+                .toArray();
+
+        ImageHeaderInfo info = imageProbe.probe(jpeg).orElseThrow();
+
+        assertThat(info.getColorModel()).isEqualTo("GRAY");
+        assertThat(info.getOrientation()).isEqualTo(8);
+    }
+
+    @Test
+    void jpegFindsStartOfFrameAfterLargeApp1() {
+        byte[] xmp = new byte[60_000];
+        byte[] namespace = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(namespace, 0, xmp, 0, namespace.length);
+        byte[] jpeg = new Fixture()
+                .bytes(0xFF, 0xD8)
+                .segment(0xE1, exif(ByteOrder.BIG_ENDIAN, 3))
+                .segment(0xE1, xmp)
+                .bytes(sof(800, 600, 4))
+                .toArray();
+
+        ImageHeaderInfo info = imageProbe.probe(jpeg).orElseThrow();
+
+        assertThat(info.getWidth()).isEqualTo(800);
+        assertThat(info.getColorModel()).isEqualTo("CMYK");
+        assertThat(info.getOrientation()).isEqualTo(3);
+
+        // Заголовок обрезан посреди APP1: SOF не прочитан, нужен полный разбор
+        assertThat(imageProbe.probe(Arrays.copyOf(jpeg, 8 * 1024))).isEmpty();
+    }
+
+    @Test
+    void jpegWithoutFrameBeforeScanIsNotProbed() {
+        byte[] jpeg = new Fixture()
+                .bytes(0xFF, 0xD8)
+                .segment(0xDA, new byte[10])
+                .bytes(sof(10, 10, 3))
+                .toArray();
+
+        assertThat(imageProbe.probe(jpeg)).isEmpty();
+    }
+
+    @Test
+    void png() {
+        byte[] png = new Fixture()
+                .bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)
+                .int32(13, ByteOrder.BIG_ENDIAN)
+                .bytes('I', 'H', 'D', 'R')
+                .int32(1920, ByteOrder.BIG_ENDIAN)
+                .int32(1080, ByteOrder.BIG_ENDIAN)
+                .bytes(8, 6, 0, 0, 0)
+                .toArray();
+
+        ImageHeaderInfo info = imageProbe.probe(png).orElseThrow();
+
+        assertThat(info.getFormat()).isEqualTo("png");
+        assertThat(info.getWidth()).isEqualTo(1920);
+        assertThat(info.getHeight()).isEqualTo(1080);
+        assertThat(info.getColorModel()).isEqualTo("RGBA");
+    }
+
+    @Test
+    void gif() {
+        byte[] gif = new Fixture()
+                .bytes('G', 'I', 'F', '8', '9', 'a')
+                .int16(320, ByteOrder.LITTLE_ENDIAN)
+                .int16(200, ByteOrder.LITTLE_ENDIAN)
+                .bytes(0xF7, 0, 0)
+                .toArray();
+
+        ImageHeaderInfo info = imageProbe.probe(gif).orElseThrow();
+
+        assertThat(info.getFormat()).isEqualTo("gif");
+        assertThat(info.getWidth()).isEqualTo(320);
+        assertThat(info.getHeight()).isEqualTo(200);
+        assertThat(info.getColorModel()).isEqualTo("INDEXED");
+    }
+
+    @Test
+    void bmpWithCoreHeader() {
+        byte[] bmp = bmpFileHeader()
+                .int32(12, ByteOrder.LITTLE_ENDIAN)
+                .int16(64, ByteOrder.LITTLE_ENDIAN)
+                .int16(32, ByteOrder.LITTLE_ENDIAN)
+                .int16(1, ByteOrder.LITTLE_ENDIAN)
+                .int16(8, ByteOrder.LITTLE_ENDIAN)
+                .toArray();
+
+        ImageHeaderInfo info = imageProbe.probe(bmp).orElseThrow();
+
+        assertThat(info.getFormat()).isEqualTo("bmp");
+        assertThat(info.getWidth()).isEqualTo(64);
+        assertThat(info.getHeight()).isEqualTo(32);
+        assertThat(info.getColorModel()).isEqualTo("INDEXED");
+    }
+
+    @Test
+    void bmpWithInfoHeaderAndNegativeHeight() {
+        byte[] bmp = bmpFileHeader()
+                .int32(40, ByteOrder.LITTLE_ENDIAN)
+                .int32(1024, ByteOrder.LITTLE_ENDIAN)
+                .int32(-768, ByteOrder.LITTLE_ENDIAN)   // хранение сверху вниз
+                .int16(1, ByteOrder.LITTLE_ENDIAN)
+                .int16(32, ByteOrder.LITTLE_ENDIAN)
+                .toArray();
+
+        ImageHeaderInfo info = imageProbe.probe(bmp).orElseThrow();
+
+        assertThat(info.getWidth()).isEqualTo(1024);
+        assertThat(info.getHeight()).isEqualTo(768);
+        assertThat(info.getColorModel()).isEqualTo("RGBA");
+    }
+
+    @Test
+    void truncatedHeadersAreNotProbed() {
+        byte[] jpeg = new Fixture()
+                .bytes(0xFF, 0xD8)
+                .segment(0xE0, "JFIF\0".getBytes(StandardCharsets.ISO_8859_1))
+                .bytes(sof(640, 480, 3))
+                .toArray();
+        byte[] png = new Fixture()
+                .bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)
+                .int32(13, ByteOrder.BIG_ENDIAN)
+                .bytes('I', 'H', 'D', 'R')
+                .int32(1920, ByteOrder.BIG_ENDIAN)
+                .toArray();
+        byte[] bmp = bmpFileHeader()
+                .int32(40, ByteOrder.LITTLE_ENDIAN)
+                .int32(1024, ByteOrder.LITTLE_ENDIAN)
+                .toArray();
+
+        assertThat(imageProbe.probe(null)).isEmpty();
+        assertThat(imageProbe.probe(new byte[]{'G', 'I', 'F', '8', '9', 'a', 1, 0})).isEmpty();
+        assertThat(imageProbe.probe(Arrays.copyOf(jpeg, jpeg.length - 12))).isEmpty();
+        assertThat(imageProbe.probe(png)).isEmpty();
+        assertThat(imageProbe.probe(bmp)).isEmpty();
+    }
+
+    @Test
+    void failingImageReaderFallsBackToFullDecode() {
+        FailingReaderSpi spi = new FailingReaderSpi();
+        IIORegistry.getDefaultInstance().registerServiceProvider(spi);
+        try {
+            byte[] header = "FAILING-IMAGE-HEADER".getBytes(StandardCharsets.ISO_8859_1);
+
+            assertThat(imageProbe.probe(header)).isEmpty();
+        } finally {
+            IIORegistry.getDefaultInstance().deregisterServiceProvider(spi);
+        }
+    }
+
+    private static byte[] sof(int width, int height, int components) {
+        Fixture payload = new Fixture()
+                .bytes(8)
+                .int16(height, ByteOrder.BIG_ENDIAN)
+                .int16(width, ByteOrder.BIG_ENDIAN)
+                .bytes(components);
+        for (int i = 0; i < components; i++) {
+            payload.bytes(i + 1, 0x11, 0);
+        }
+        return new Fixture().segment(0xC0, payload.toArray()).toArray();
+    }
+
+    /**
+     * APP1 "Exif": TIFF-заголовок и IFD0 с тегом Orientation
+     */
+    private static byte[] exif(ByteOrder order, int orientation) {
+        return new Fixture()
+                .bytes('E', 'x', 'i', 'f', 0, 0)
+                .bytes(order == ByteOrder.LITTLE_ENDIAN ? new byte[]{'I', 'I'} : new byte[]{'M', 'M'})
+                .int16(42, order)
+                .int32(8, order)
+                .int16(2, order)
+                // ImageWidth, чтобы Orientation не был первым тегом
+                .int16(0x0100, order).int16(3, order).int32(1, order).int16(4000, order).int16(0, order)
+                .int16(0x0112, order).int16(3, order).int32(1, order).int16(orientation, order).int16(0, order)
+                .int32(0, order)
+                .toArray();
+    }
+
+    private static Fixture bmpFileHeader() {
+        return new Fixture()
+                .bytes('B', 'M')
+                .int32(0, ByteOrder.LITTLE_ENDIAN)
+                .int32(0, ByteOrder.LITTLE_ENDIAN)
+                .int32(54, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static class Fixture {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Fixture bytes(int... values) {
+            for (int value : values) {
+                out.write(value);
+            }
+            return this;
+        }
+
+        Fixture bytes(byte[] values) {
+            out.writeBytes(values);
+            return this;
+        }
+
+        Fixture int16(int value, ByteOrder order) {
+            return bytes(ByteBuffer.allocate(2).order(order).putShort((short) value).array());
+        }
+
+        Fixture int32(int value, ByteOrder order) {
+            return bytes(ByteBuffer.allocate(4).order(order).putInt(value).array());
+        }
+
+        /**
+         * Сегмент JPEG: маркер и длина, включающая два байта самой длины
+         */
+        Fixture segment(int marker, byte[] payload) {
+            return bytes(0xFF, marker).int16(payload.length + 2, ByteOrder.BIG_ENDIAN).bytes(payload);
+        }
+
+        byte[] toArray() {
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Сторонний ImageReader, который узнает формат, но бросает непроверяемое исключение при чтении размеров
+     */
+    private static class FailingReaderSpi extends ImageReaderSpi {
+        private static final byte[] MAGIC = "FAILING".getBytes(StandardCharsets.ISO_8859_1);
+
+        FailingReaderSpi() {
+            super("test", "1", new String[]{"failing"}, null, null, FailingReader.class.getName(),
+                    new Class<?>[]{ImageInputStream.class}, null, false, null, null, null, null,
+                    false, null, null, null, null);
+        }
+
+        @Override
+        public boolean canDecodeInput(Object source) throws java.io.IOException {
+            ImageInputStream stream = (ImageInputStream) source;
+            byte[] magic = new byte[MAGIC.length];
+            stream.mark();
+            try {
+                stream.readFully(magic);
+            } finally {
+                stream.reset();
+            }
+            return Arrays.equals(magic, MAGIC);
+        }
+
+        @Override
+        public ImageReader createReaderInstance(Object extension) {
+            return new FailingReader(this);
+        }
+
+        @Override
+        public String getDescription(Locale locale) {
+            return "Failing test reader";
+        }
+    }
+
+    private static class FailingReader extends ImageReader {
+        FailingReader(ImageReaderSpi spi) {
+            super(spi);
+        }
+
+        @Override
+        public String getFormatName() {
+            return "failing";
+        }
+
+        @Override
+        public int getNumImages(boolean allowSearch) {
+            return 1;
+        }
+
+        @Override
+        public int getWidth(int imageIndex) {
+            throw new IllegalStateException("Unsupported header");
+        }
+
+        @Override
+        public int getHeight(int imageIndex) {
+            throw new IllegalStateException("Unsupported header");
+        }
+
+        @Override
+        public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) {
+            throw new IllegalStateException("Unsupported header");
+        }
+
+        @Override
+        public IIOMetadata getStreamMetadata() {
+            return null;
+        }
+
+        @Override
+        public IIOMetadata getImageMetadata(int imageIndex) {
+            return null;
+        }
+
+        @Override
+        public BufferedImage read(int imageIndex, ImageReadParam param) {
+            throw new IllegalStateException("Unsupported header");
+        }
+    }
+}
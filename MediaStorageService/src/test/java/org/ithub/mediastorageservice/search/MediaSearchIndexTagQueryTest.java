@@ -0,0 +1,82 @@
+package org.ithub.mediastorageservice.search;
+
+import org.ithub.mediastorageservice.enums.MediaStatus;
+import org.ithub.mediastorageservice.enums.MediaType;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.repository.MediaTagRepository;
+import org.ithub.mediastorageservice.service.MediaTagService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Поиск по выражению над тегами на нескольких документах в памяти
+ * и синхронизация битовых карт тегов при изменении тегов через MediaTagService
+ */
+class MediaSearchIndexTagQueryTest {
+    private MediaSearchIndex mediaSearchIndex;
+
+    @BeforeEach
+    void setUp() {
+        mediaSearchIndex = new MediaSearchIndex();
+        mediaSearchIndex.index(MediaSearchServiceTest.mediaFile(1), Set.of("travel", "family"));
+        mediaSearchIndex.index(MediaSearchServiceTest.mediaFile(2), Set.of("travel", "work"));
+        mediaSearchIndex.index(MediaSearchServiceTest.mediaFile(3), Set.of("Travel", "pets"));
+
+        MediaFile video = MediaSearchServiceTest.mediaFile(4);
+        video.setMediaType(MediaType.VIDEO);
+        video.setStatus(MediaStatus.PROCESSING);
+        mediaSearchIndex.index(video, Set.of("family", "new york"));
+    }
+
+    @Test
+    void evaluatesExpressionNewestFirst() {
+        assertThat(ids("travel AND (family OR pets) AND NOT work")).containsExactly(3L, 1L);
+        assertThat(ids("family OR \"new york\"")).containsExactly(4L, 1L);
+        assertThat(ids("NOT travel")).containsExactly(4L);
+        assertThat(ids("unknown OR pets")).containsExactly(3L);
+    }
+
+    @Test
+    void filtersByTypeAndStatusAndCountsFacetsOverWholeResult() {
+        MediaSearchIndex.TagQueryHits hits = mediaSearchIndex.searchByTags("travel OR family", null, null, 0, 1, 10);
+
+        assertThat(hits.ids()).containsExactly(4L);
+        assertThat(hits.total()).isEqualTo(4);
+        assertThat(hits.tagFacets()).containsExactly(
+                Map.entry("travel", 3L), Map.entry("family", 2L), Map.entry("new york", 1L),
+                Map.entry("pets", 1L), Map.entry("work", 1L));
+        assertThat(hits.mediaTypeFacets()).containsOnly(Map.entry("IMAGE", 3L), Map.entry("VIDEO", 1L));
+
+        assertThat(mediaSearchIndex.searchByTags("family", "IMAGE", null, 0, 10, 0).ids()).containsExactly(1L);
+        assertThat(mediaSearchIndex.searchByTags("family", null, "PROCESSING", 0, 10, 0).ids()).containsExactly(4L);
+    }
+
+    @Test
+    void tagChangesThroughMediaTagServiceUpdatePostingLists() {
+        MediaTagService mediaTagService = new MediaTagService(mock(MediaTagRepository.class), mediaSearchIndex);
+        MediaFile mediaFile = MediaSearchServiceTest.mediaFile(2);
+
+        mediaTagService.addTagsToFile(mediaFile, Set.of("family"));
+        mediaTagService.removeTagsFromFile(mediaFile, Set.of("WORK"));
+
+        assertThat(ids("family")).containsExactly(4L, 2L, 1L);
+        assertThat(ids("work")).isEmpty();
+        assertThat(mediaSearchIndex.searchByTags("travel", null, null, 0, 10, 10).tagFacets())
+                .doesNotContainKey("work");
+
+        mediaTagService.removeTagsFromFile(mediaFile, Set.of("family"));
+
+        assertThat(ids("family")).containsExactly(4L, 1L);
+    }
+
+    private List<Long> ids(String expression) {
+        return mediaSearchIndex.searchByTags(expression, null, null, 0, 10, 0).ids();
+    }
+}
@@ -0,0 +1,89 @@
+package org.ithub.mediastorageservice.search;
+
+import org.ithub.mediastorageservice.dto.MediaSearchRequestDTO;
+import org.ithub.mediastorageservice.dto.MediaTagQueryDTO;
+import org.ithub.mediastorageservice.enums.MediaStatus;
+import org.ithub.mediastorageservice.enums.MediaType;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.repository.MediaFileRepository;
+import org.ithub.mediastorageservice.service.MediaFileService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Границы пагинации поиска: размер страницы ограничен, а номер страницы,
+ * при котором смещение не помещается в int, отклоняется до обращения к индексу
+ */
+class MediaSearchServiceTest {
+    private MediaSearchService mediaSearchService;
+
+    @BeforeEach
+    void setUp() {
+        MediaSearchIndex mediaSearchIndex = new MediaSearchIndex();
+        for (long id = 1; id <= 3; id++) {
+            mediaSearchIndex.index(mediaFile(id), Set.of("travel"));
+        }
+
+        MediaFileRepository mediaFileRepository = mock(MediaFileRepository.class);
+        when(mediaFileRepository.findAllById(any())).thenReturn(List.of());
+        MediaFileService mediaFileService = mock(MediaFileService.class);
+        when(mediaFileService.convertToDTOs(any())).thenReturn(List.of());
+        mediaSearchService = new MediaSearchService(mediaSearchIndex, mediaFileRepository, null, mediaFileService);
+    }
+
+    @Test
+    void rejectsPageSizeOverLimit() {
+        assertThatThrownBy(() -> mediaSearchService.search(new MediaSearchRequestDTO(), 0, 101))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> mediaSearchService.searchByTags(tagQuery("travel"), 0, 1 << 30))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsOffsetOverflow() {
+        assertThatThrownBy(() -> mediaSearchService.search(new MediaSearchRequestDTO(), Integer.MAX_VALUE, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> mediaSearchService.searchByTags(tagQuery("travel"), Integer.MAX_VALUE / 50, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void pageAfterLastIsEmpty() {
+        MediaSearchRequestDTO request = new MediaSearchRequestDTO();
+        request.setTags(Set.of("travel"));
+
+        assertThat(mediaSearchService.search(request, 1_000_000, 100).getTotalElements()).isEqualTo(3);
+        assertThat(mediaSearchService.searchByTags(tagQuery("travel"), 1_000_000, 100).getResults().getTotalElements())
+                .isEqualTo(3);
+    }
+
+    private static MediaTagQueryDTO tagQuery(String expression) {
+        MediaTagQueryDTO query = new MediaTagQueryDTO();
+        query.setExpression(expression);
+        return query;
+    }
+
+    static MediaFile mediaFile(long id) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setId(id);
+        mediaFile.setOriginalFilename("IMG_" + id + ".jpg");
+        mediaFile.setSize(2_500_000L);
+        mediaFile.setStorageKey("2025/01/01/" + id + ".jpg");
+        mediaFile.setMediaType(MediaType.IMAGE);
+        mediaFile.setMimeType("image/jpeg");
+        mediaFile.setStatus(MediaStatus.READY);
+        mediaFile.setUploadedBy("currentUser");
+        mediaFile.setCreatedAt(LocalDateTime.of(2025, 1, 1, 12, 0).plusMinutes(id));
+        return mediaFile;
+    }
+}
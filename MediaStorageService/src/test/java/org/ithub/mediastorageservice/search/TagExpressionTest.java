@@ -0,0 +1,87 @@
+package org.ithub.mediastorageservice.search;
+
+import org.ithub.mediastorageservice.controller.MediaFileController;
+import org.ithub.mediastorageservice.dto.MediaTagQueryDTO;
+import org.ithub.mediastorageservice.repository.MediaFileRepository;
+import org.ithub.mediastorageservice.search.TagExpression.And;
+import org.ithub.mediastorageservice.search.TagExpression.Not;
+import org.ithub.mediastorageservice.search.TagExpression.Or;
+import org.ithub.mediastorageservice.search.TagExpression.Tag;
+import org.ithub.mediastorageservice.service.MediaFileService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Разбор выражений над тегами: приоритет операторов, неявный AND, кавычки
+ * и ошибки синтаксиса, которые контроллер возвращает как 400
+ */
+class TagExpressionTest {
+
+    @Test
+    void notBindsTighterThanAndAndAndTighterThanOr() {
+        assertThat(TagExpression.parse("a OR b AND NOT c"))
+                .isEqualTo(new Or(new Tag("a"), new And(new Tag("b"), new Not(new Tag("c")))));
+        assertThat(TagExpression.parse("NOT a AND b OR c"))
+                .isEqualTo(new Or(new And(new Not(new Tag("a")), new Tag("b")), new Tag("c")));
+        assertThat(TagExpression.parse("a AND (b OR c)"))
+                .isEqualTo(new And(new Tag("a"), new Or(new Tag("b"), new Tag("c"))));
+    }
+
+    @Test
+    void adjacentTagsAreJoinedWithAnd() {
+        assertThat(TagExpression.parse("travel family NOT work"))
+                .isEqualTo(TagExpression.parse("travel AND family AND NOT work"));
+        assertThat(TagExpression.parse("travel (family OR pets)"))
+                .isEqualTo(new And(new Tag("travel"), new Or(new Tag("family"), new Tag("pets"))));
+    }
+
+    @Test
+    void operatorsAreCaseInsensitiveAndQuotedTagsAreNot() {
+        assertThat(TagExpression.parse("a and not b or c"))
+                .isEqualTo(TagExpression.parse("a AND NOT b OR c"));
+        assertThat(TagExpression.parse("\"new york\" \"and\""))
+                .isEqualTo(new And(new Tag("new york"), new Tag("and")));
+    }
+
+    @Test
+    void andNotIsEvaluatedAsDifferenceWithoutUniverse() {
+        Map<String, RoaringBitmap> bitmaps = Map.of(
+                "a", RoaringBitmap.bitmapOf(1, 2, 3),
+                "b", RoaringBitmap.bitmapOf(2));
+
+        // Пустое множество документов: дополнение NOT b было бы пустым, разность - нет
+        RoaringBitmap result = TagExpression.parse("a AND NOT b").evaluate(bitmaps::get, new RoaringBitmap());
+
+        assertThat(result.toArray()).containsExactly(1, 3);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "  ", "()", "\"unterminated", "a AND", "a OR", "a NOT", "NOT", "AND a", "(a", "a )", "a OR (b"})
+    void invalidExpressionsAreRejected(String expression) {
+        assertThatThrownBy(() -> TagExpression.parse(expression))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void invalidExpressionIsBadRequest() {
+        MediaSearchService mediaSearchService = new MediaSearchService(new MediaSearchIndex(),
+                mock(MediaFileRepository.class), null, mock(MediaFileService.class));
+        MediaFileController controller = new MediaFileController(null, null, null, null, mediaSearchService);
+        MediaTagQueryDTO query = new MediaTagQueryDTO();
+        query.setExpression("travel AND");
+
+        assertThatThrownBy(() -> controller.searchFilesByTags(query, 0, 10))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+    }
+}
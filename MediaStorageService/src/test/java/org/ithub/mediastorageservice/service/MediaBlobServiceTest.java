@@ -0,0 +1,108 @@
+package org.ithub.mediastorageservice.service;
+
+import org.ithub.mediastorageservice.repository.MediaBlobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Подсчет ссылок для файлов с общим содержимым, у которых несколько вариантов
+ * ссылаются на один объект. Репозиторий заменен счетчиками в памяти с той же семантикой запросов
+ */
+class MediaBlobServiceTest {
+    private static final String ORIGINAL = "2025/01/01/a.jpg";
+    private static final String SHARED_VARIANT = "2025/01/01/variants/thumbnail/a.jpg";
+
+    private final Map<String, Integer> refCounts = new HashMap<>();
+    private MediaBlobService mediaBlobService;
+
+    @BeforeEach
+    void setUp() {
+        MediaBlobRepository repository = mock(MediaBlobRepository.class);
+        when(repository.register(anyString(), any())).thenAnswer(invocation -> {
+            refCounts.merge(invocation.getArgument(0), 1, Integer::sum);
+            return 1;
+        });
+        when(repository.acquire(anyCollection(), anyInt())).thenAnswer(invocation -> {
+            Collection<String> keys = invocation.getArgument(0);
+            int count = invocation.getArgument(1);
+            int updated = 0;
+            for (String key : keys) {
+                if (refCounts.getOrDefault(key, 0) > 0) {
+                    refCounts.merge(key, count, Integer::sum);
+                    updated++;
+                }
+            }
+            return updated;
+        });
+        when(repository.release(anyCollection(), anyInt())).thenAnswer(invocation -> {
+            Collection<String> keys = invocation.getArgument(0);
+            int count = invocation.getArgument(1);
+            keys.forEach(key -> refCounts.merge(key, -count, Integer::sum));
+            return keys.size();
+        });
+        when(repository.findExistingKeys(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<String>>getArgument(0).stream().filter(refCounts::containsKey).toList());
+        when(repository.findUnreferencedKeys(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<String>>getArgument(0).stream()
+                        .filter(key -> refCounts.containsKey(key) && refCounts.get(key) <= 0)
+                        .toList());
+        when(repository.deleteUnreferenced(anyCollection())).thenAnswer(invocation -> {
+            List<String> unreferenced = invocation.<Collection<String>>getArgument(0).stream()
+                    .filter(key -> refCounts.containsKey(key) && refCounts.get(key) <= 0)
+                    .toList();
+            unreferenced.forEach(refCounts::remove);
+            return unreferenced.size();
+        });
+
+        mediaBlobService = new MediaBlobService(repository, null, null, null);
+    }
+
+    @Test
+    void sharedVariantKeySurvivesDeletingDeduplicatedCopies() {
+        // Файл A: оригинал и два варианта с одинаковым результатом, записанные один раз
+        mediaBlobService.register(ORIGINAL, "hash");
+        mediaBlobService.register(SHARED_VARIANT, null);
+        mediaBlobService.register(SHARED_VARIANT, null);
+
+        // B и C - то же содержимое: берут ссылки на оригинал и варианты A, как reuseExistingContent
+        List<String> fileKeys = List.of(ORIGINAL, SHARED_VARIANT, SHARED_VARIANT);
+        assertThat(mediaBlobService.acquireAll(fileKeys)).isTrue();
+        assertThat(mediaBlobService.acquireAll(fileKeys)).isTrue();
+        assertThat(refCounts.get(SHARED_VARIANT)).isEqualTo(6);
+
+        // Удаление B и C освобождает по ссылке на каждую запись варианта
+        assertThat(mediaBlobService.release(fileKeys)).isEmpty();
+        assertThat(mediaBlobService.release(fileKeys)).isEmpty();
+        assertThat(refCounts.get(SHARED_VARIANT)).isEqualTo(2);
+
+        // После удаления A объекты больше никому не нужны
+        assertThat(mediaBlobService.release(fileKeys)).containsExactlyInAnyOrder(ORIGINAL, SHARED_VARIANT);
+    }
+
+    @Test
+    void originalAliasDoesNotReleaseUntrackedOriginal() {
+        // Оригинал загружен до появления подсчета ссылок, профиль больше оригинала ссылается на него
+        mediaBlobService.registerOriginalAlias(ORIGINAL);
+        assertThat(refCounts.get(ORIGINAL)).isEqualTo(2);
+
+        // Повторная обработка удаляет запись варианта, оригинал остается
+        assertThat(mediaBlobService.release(List.of(ORIGINAL))).isEmpty();
+
+        // Удаление файла освобождает оригинал вместе с записью варианта
+        mediaBlobService.registerOriginalAlias(ORIGINAL);
+        assertThat(mediaBlobService.release(List.of(ORIGINAL, ORIGINAL))).containsExactly(ORIGINAL);
+    }
+}
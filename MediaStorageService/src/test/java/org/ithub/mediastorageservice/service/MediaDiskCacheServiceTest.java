@@ -0,0 +1,100 @@
+package org.ithub.mediastorageservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Закрепление файлов дискового кеша: вытеснение и invalidate не удаляют файл, который сейчас отдается.
+ * Бюджет кеша вмещает один объект, поэтому заполнение второго вытесняет первый
+ */
+class MediaDiskCacheServiceTest {
+    private static final int OBJECT_SIZE = 1024;
+
+    @TempDir
+    Path directory;
+
+    private MediaDiskCacheService mediaDiskCacheService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MediaStorageService mediaStorageService = mock(MediaStorageService.class);
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(3).write(new byte[(int) (long) invocation.getArgument(2)]);
+            return null;
+        }).when(mediaStorageService).copyFile(anyString(), anyLong(), anyLong(), any(OutputStream.class));
+
+        mediaDiskCacheService = new MediaDiskCacheService(mediaStorageService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(mediaDiskCacheService, "enabled", true);
+        ReflectionTestUtils.setField(mediaDiskCacheService, "directory", directory.toString());
+        ReflectionTestUtils.setField(mediaDiskCacheService, "maxBytes", (long) OBJECT_SIZE);
+        ReflectionTestUtils.setField(mediaDiskCacheService, "maxObjectSize", (long) OBJECT_SIZE);
+        ReflectionTestUtils.setField(mediaDiskCacheService, "fillWorkers", 1);
+        ReflectionTestUtils.setField(mediaDiskCacheService, "fillQueueCapacity", 1);
+        ReflectionTestUtils.setField(mediaDiskCacheService, "sendfileLinkTtlMs", 0L);
+        mediaDiskCacheService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        mediaDiskCacheService.stop();
+    }
+
+    @Test
+    void evictedFileIsDeletedByLastReader() {
+        MediaDiskCacheService.Pin pin = mediaDiskCacheService.pinOrFill("a.jpg", OBJECT_SIZE).orElseThrow();
+        Path path = pin.path();
+
+        // Второй объект вытесняет первый, но первый еще отдается
+        mediaDiskCacheService.pinOrFill("b.jpg", OBJECT_SIZE).orElseThrow().close();
+        assertThat(path).exists();
+
+        pin.close();
+        assertThat(path).doesNotExist();
+    }
+
+    @Test
+    void invalidatedFileIsDeletedByLastReader() {
+        MediaDiskCacheService.Pin first = mediaDiskCacheService.pinOrFill("a.jpg", OBJECT_SIZE).orElseThrow();
+        MediaDiskCacheService.Pin second = mediaDiskCacheService.pinOrFill("a.jpg", OBJECT_SIZE).orElseThrow();
+        Path path = first.path();
+
+        mediaDiskCacheService.invalidate(List.of("a.jpg"));
+        first.close();
+        assertThat(path).exists();
+
+        second.close();
+        assertThat(path).doesNotExist();
+    }
+
+    @Test
+    void sendfileLinkOutlivesEvictionUntilSwept() throws Exception {
+        Path link;
+        try (MediaDiskCacheService.Pin pin = mediaDiskCacheService.pinOrFill("a.jpg", OBJECT_SIZE).orElseThrow()) {
+            link = pin.sendfileLink().orElseThrow();
+        }
+
+        // Tomcat открывает ссылку уже после снятия закрепления и вытеснения файла
+        mediaDiskCacheService.pinOrFill("b.jpg", OBJECT_SIZE).orElseThrow().close();
+        assertThat(Files.size(link)).isEqualTo(OBJECT_SIZE);
+
+        Thread.sleep(5);
+        mediaDiskCacheService.removeStaleSendfileLinks();
+        assertThat(link).doesNotExist();
+    }
+}
@@ -0,0 +1,118 @@
+package org.ithub.mediastorageservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.ithub.mediastorageservice.dto.MediaFileDTO;
+import org.ithub.mediastorageservice.enums.MediaStatus;
+import org.ithub.mediastorageservice.enums.MediaTagType;
+import org.ithub.mediastorageservice.enums.MediaType;
+import org.ithub.mediastorageservice.model.MediaFile;
+import org.ithub.mediastorageservice.model.MediaTag;
+import org.ithub.mediastorageservice.model.MediaVariant;
+import org.ithub.mediastorageservice.repository.MediaFileRepository;
+import org.ithub.mediastorageservice.repository.MediaTagRepository;
+import org.ithub.mediastorageservice.repository.MediaVariantRepository;
+import org.ithub.mediastorageservice.search.MediaSearchIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Число запросов convertToDTOs не зависит от числа файлов: теги и варианты
+ * загружаются для всей страницы двумя запросами с IN. Считается по статистике Hibernate на H2
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class MediaFileServiceQueryCountTest {
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private MediaFileRepository mediaFileRepository;
+    @Autowired
+    private MediaTagRepository mediaTagRepository;
+    @Autowired
+    private MediaVariantRepository mediaVariantRepository;
+
+    private MediaFileService mediaFileService;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        MediaStorageService mediaStorageService = mock(MediaStorageService.class);
+        when(mediaStorageService.getPresignedUrl(anyString(), anyInt()))
+                .thenAnswer(invocation -> "http://minio/" + invocation.getArgument(0));
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MediaSearchIndex mediaSearchIndex = new MediaSearchIndex();
+        MediaTagService mediaTagService = new MediaTagService(mediaTagRepository, mediaSearchIndex);
+        MediaVariantService mediaVariantService = new MediaVariantService(mediaVariantRepository, mediaStorageService,
+                null, mediaFileRepository, null, mediaSearchIndex, meterRegistry, null, null, null);
+        mediaFileService = new MediaFileService(mediaFileRepository, mediaStorageService, mediaTagService, mediaVariantService,
+                null, null, null, null, null, mediaSearchIndex, meterRegistry);
+        mediaFileService.initMetrics();
+
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 50})
+    void convertToDTOsUsesTwoStatementsForAnyNumberOfFiles(int files) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            ids.add(persistFile(i));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        List<MediaFile> mediaFiles = mediaFileRepository.findAllById(ids);
+
+        statistics.clear();
+        List<MediaFileDTO> dtos = mediaFileService.convertToDTOs(mediaFiles);
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(dtos).hasSize(files);
+        assertThat(dtos).allSatisfy(dto -> {
+            assertThat(dto.getTags()).containsExactlyInAnyOrder("travel", "summer");
+            assertThat(dto.getVariantUrls()).containsOnlyKeys("thumbnail", "medium");
+        });
+    }
+
+    private long persistFile(int index) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setOriginalFilename("IMG_" + index + ".jpg");
+        mediaFile.setSize(2_500_000L);
+        mediaFile.setStorageKey("2025/01/01/" + index + ".jpg");
+        mediaFile.setMediaType(MediaType.IMAGE);
+        mediaFile.setMimeType("image/jpeg");
+        mediaFile.setStatus(MediaStatus.READY);
+        entityManager.persist(mediaFile);
+
+        for (String name : List.of("travel", "summer")) {
+            MediaTag tag = new MediaTag();
+            tag.setMediaFile(mediaFile);
+            tag.setName(name);
+            tag.setType(MediaTagType.MANUAL);
+            entityManager.persist(tag);
+        }
+        for (String name : List.of("thumbnail", "medium")) {
+            MediaVariant variant = new MediaVariant();
+            variant.setMediaFile(mediaFile);
+            variant.setVariantName(name);
+            variant.setStorageKey("2025/01/01/variants/" + name + "/" + index + ".jpg");
+            entityManager.persist(variant);
+        }
+        return mediaFile.getId();
+    }
+}